@@ -2,6 +2,7 @@ package simpledb;
 import simpledb.enums.Type;
 import simpledb.exception.DbException;
 import simpledb.exception.TransactionAbortedException;
+import simpledb.model.Database;
 import simpledb.model.DbFileIterator;
 import simpledb.model.TransactionId;
 import simpledb.model.Tuple;
@@ -9,16 +10,46 @@ import simpledb.model.dbfile.DbFile;
 import simpledb.model.dbfile.HeapFileEncoder;
 import simpledb.util.BufferPool;
 import simpledb.util.Utility;
+import simpledb.util.metrics.MetricsRegistry;
 
 import java.io.*;
+import java.util.Arrays;
 
 public class SimpleDb {
     public static void main (String[] args)
             throws DbException, TransactionAbortedException {
+        // --metrics <command> ... prints the BufferPool metrics once the command is done
+        if (args.length > 1 && args[0].equals("--metrics")) {
+            MetricsRegistry metrics = Database.getBufferPool().getMetrics();
+            metrics.setEnabled(true);
+            try {
+                main(Arrays.copyOfRange(args, 1, args.length));
+            } finally {
+                metrics.dump(System.err);
+            }
+            return;
+        }
         switch (args[0]) {
             // convert a file
             case "convert":
                 try {
+                    // convert [--page-size N] [--threads N] file numAttrs [types [separator]]
+                    int pageSize = BufferPool.getPageSize();
+                    int threads = 1;
+                    while (args.length > 2 && args[1].startsWith("--")) {
+                        if (args[1].equals("--page-size")) {
+                            pageSize = Integer.parseInt(args[2]);
+                        } else if (args[1].equals("--threads")) {
+                            threads = Integer.parseInt(args[2]);
+                        } else {
+                            System.err.println("Unknown option " + args[1] + " to convert");
+                            return;
+                        }
+                        String[] rest = new String[args.length - 2];
+                        rest[0] = args[0];
+                        System.arraycopy(args, 3, rest, 1, args.length - 3);
+                        args = rest;
+                    }
                     if (args.length < 3 || args.length > 5) {
                         System.err.println("Unexpected number of arguments to convert ");
                         return;
@@ -57,7 +88,7 @@ public class SimpleDb {
                     }
 
                     HeapFileEncoder.convert(sourceTxtFile, targetDatFile,
-                            BufferPool.getPageSize(), numOfAttributes, ts, fieldSeparator);
+                            pageSize, numOfAttributes, ts, fieldSeparator, threads);
 
                 } catch (IOException e) {
                     throw new RuntimeException(e);
@@ -7,6 +7,7 @@ import simpledb.model.field.StringField;
 import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 import java.text.ParseException;
 
 /**
@@ -33,6 +34,16 @@ public enum Type implements Serializable {
             }
         }
 
+        @Override
+        public Field parse(ByteBuffer buf, int offset) {
+            return new IntField(buf.getInt(offset));
+        }
+
+        @Override
+        public void write(ByteBuffer buf, int offset, Field f) {
+            buf.putInt(offset, ((IntField) f).getValue());
+        }
+
     },
     STRING_TYPE() {
         @Override
@@ -52,6 +63,27 @@ public enum Type implements Serializable {
                 throw new ParseException("couldn't parse", 0);
             }
         }
+
+        @Override
+        public Field parse(ByteBuffer buf, int offset) {
+            int strLen = buf.getInt(offset);
+            byte bs[] = new byte[strLen];
+            for (int i = 0; i < strLen; i++) {
+                bs[i] = buf.get(offset + 4 + i);
+            }
+            return new StringField(new String(bs), STRING_LEN);
+        }
+
+        @Override
+        public void write(ByteBuffer buf, int offset, Field f) {
+            // 与StringField.serialize一致：长度、每个字符的低字节，再用0补齐
+            String s = ((StringField) f).getValue();
+            int strLen = Math.min(s.length(), STRING_LEN);
+            buf.putInt(offset, strLen);
+            for (int i = 0; i < STRING_LEN; i++) {
+                buf.put(offset + 4 + i, i < strLen ? (byte) s.charAt(i) : 0);
+            }
+        }
     };
     
     public static final int STRING_LEN = 128;
@@ -70,4 +102,23 @@ public enum Type implements Serializable {
    */
     public abstract Field parse(DataInputStream dis) throws ParseException;
 
+  /**
+   * @return a Field object of the same type as this object decoded from the
+   *   specified buffer at the specified absolute offset. The position of the
+   *   buffer is not modified.
+   * @param buf The buffer to read from
+   * @param offset The offset of the field in the buffer
+   */
+    public abstract Field parse(ByteBuffer buf, int offset);
+
+  /**
+   * Writes the specified field of this type to the specified buffer at the
+   * specified absolute offset, in the format {@link Field#serialize} uses.
+   * The position of the buffer is not modified.
+   * @param buf The buffer to write to
+   * @param offset The offset of the field in the buffer
+   * @param f The field to write
+   */
+    public abstract void write(ByteBuffer buf, int offset, Field f);
+
 }
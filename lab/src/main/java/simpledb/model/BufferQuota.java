@@ -0,0 +1,67 @@
+package simpledb.model;
+
+/**
+ * BufferQuota tells the BufferPool how many pages of a table it should keep.
+ * <p>
+ * The pool evicts pages of low priority tables before those of higher
+ * priority ones, and doesn't evict pages of a table holding no more than its
+ * reserved pages while pages of other tables can go instead. A table holding
+ * maxPages pages gives up one of its own pages for every new one, so a large
+ * scan can't take over the pool. Both bounds are soft: pinned and dirty
+ * pages are never evicted to meet them.
+ *
+ * @see Catalog#getBufferQuota
+ */
+public class BufferQuota {
+
+    /** Eviction priority of the pages of a table. */
+    public enum Priority {
+        LOW, NORMAL, HIGH
+    }
+
+    /** The quota of tables without one: no reservation, no cap, normal priority. */
+    public static final BufferQuota DEFAULT = new BufferQuota(0, 0, Priority.NORMAL);
+
+    private final int reservedPages;
+    private final int maxPages;
+    private final Priority priority;
+
+    /**
+     * @param reservedPages the number of pages kept ahead of other tables' pages, 0 for none
+     * @param maxPages the maximum number of pages of the table, 0 for no cap
+     * @param priority the eviction priority of the table's pages
+     */
+    public BufferQuota(int reservedPages, int maxPages, Priority priority) {
+        if (reservedPages < 0 || maxPages < 0 || (maxPages > 0 && reservedPages > maxPages)) {
+            throw new IllegalArgumentException("BufferQuota: invalid reservation " + reservedPages
+                    + " and cap " + maxPages);
+        }
+        this.reservedPages = reservedPages;
+        this.maxPages = maxPages;
+        this.priority = priority;
+    }
+
+    public int getReservedPages() {
+        return reservedPages;
+    }
+
+    public int getMaxPages() {
+        return maxPages;
+    }
+
+    public Priority getPriority() {
+        return priority;
+    }
+
+    /**
+     * @return true if this quota differs from {@link #DEFAULT}
+     */
+    public boolean isRestrictive() {
+        return reservedPages > 0 || maxPages > 0 || priority != Priority.NORMAL;
+    }
+
+    @Override
+    public String toString() {
+        return "reserve=" + reservedPages + " max=" + maxPages + " priority=" + priority.name().toLowerCase();
+    }
+}
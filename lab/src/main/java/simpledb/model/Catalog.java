@@ -3,6 +3,7 @@ package simpledb.model;
 import simpledb.enums.Type;
 import simpledb.model.dbfile.DbFile;
 import simpledb.model.dbfile.HeapFile;
+import simpledb.model.dbfile.MappedHeapFile;
 
 import java.io.BufferedReader;
 import java.io.File;
@@ -30,11 +31,13 @@ public class Catalog {
         private final DbFile file;
         private final String name;
         private final String pkeyField;
+        private volatile BufferQuota quota;
 
-        public DbTable(DbFile file, String name, String pkeyField) {
+        public DbTable(DbFile file, String name, String pkeyField, BufferQuota quota) {
             this.file = file;
             this.name = name;
             this.pkeyField = pkeyField;
+            this.quota = quota;
         }
 
         public DbFile getFile() {
@@ -48,10 +51,16 @@ public class Catalog {
         public String getPkeyField() {
             return pkeyField;
         }
+
+        public BufferQuota getQuota() {
+            return quota;
+        }
     }
 
     private final ConcurrentHashMap<Integer, DbTable> catalog;
     private final ConcurrentHashMap<String, Integer> name2IdMap;
+    // 一旦有表设置了配额就保持为true，BufferPool据此决定是否按配额淘汰
+    private volatile boolean hasBufferQuotas;
 
     public Catalog() {
         // some code goes here
@@ -69,8 +78,22 @@ public class Catalog {
      * conflict exists, use the last table to be added as the table for a given name.
      */
     public void addTable(DbFile file, String name, String pkeyField) {
+        addTable(file, name, pkeyField, BufferQuota.DEFAULT);
+    }
+
+    /**
+     * Add a new table to the catalog with the specified BufferPool quota.
+     * @see #addTable(DbFile, String, String)
+     */
+    public void addTable(DbFile file, String name, String pkeyField, BufferQuota quota) {
         // some code goes here
-        catalog.put(file.getId(), new DbTable(file, name, pkeyField));
+        if (quota.isRestrictive()) {
+            hasBufferQuotas = true;
+        }
+        DbTable old = catalog.put(file.getId(), new DbTable(file, name, pkeyField, quota));
+        if (old != null && old.getFile() != file) {
+            old.getFile().close();
+        }
         name2IdMap.put(name, file.getId());
     }
 
@@ -140,20 +163,80 @@ public class Catalog {
         return name2IdMap.values().iterator();
     }
 
+    /**
+     * @return the BufferPool quota of the specified table, {@link BufferQuota#DEFAULT}
+     *     if the table doesn't exist
+     */
+    public BufferQuota getBufferQuota(int tableid) {
+        DbTable table = catalog.get(tableid);
+        return table == null ? BufferQuota.DEFAULT : table.getQuota();
+    }
+
+    /**
+     * Changes the BufferPool quota of the specified table.
+     * @throws NoSuchElementException if the table doesn't exist
+     */
+    public void setBufferQuota(int tableid, BufferQuota quota) throws NoSuchElementException {
+        DbTable table = catalog.get(tableid);
+        if (table == null) {
+            throw new NoSuchElementException();
+        }
+        if (quota.isRestrictive()) {
+            hasBufferQuotas = true;
+        }
+        table.quota = quota;
+    }
+
+    /**
+     * @return true if any table was given a quota other than the default one
+     */
+    public boolean hasBufferQuotas() {
+        return hasBufferQuotas;
+    }
+
     public String getTableName(int id) {
         // some code goes here
         return catalog.get(id).getName();
     }
     
+    /**
+     * Remove the specified table from the catalog and close its DbFile.
+     * @param tableid The id of the table, as specified by the DbFile.getId()
+     *     function passed to addTable
+     * @throws NoSuchElementException if the table doesn't exist
+     */
+    public void removeTable(int tableid) throws NoSuchElementException {
+        DbTable table = catalog.remove(tableid);
+        if (table == null) {
+            throw new NoSuchElementException();
+        }
+        name2IdMap.remove(table.getName(), tableid);
+        table.getFile().close();
+    }
+
     /** Delete all tables from the catalog */
     public void clear() {
         // some code goes here
+        for (DbTable table : catalog.values()) {
+            table.getFile().close();
+        }
         catalog.clear();
         name2IdMap.clear();
+        hasBufferQuotas = false;
     }
     
     /**
      * Reads the schema from a file and creates the appropriate tables in the database.
+     * Each line describes one table:
+     * <pre>
+     *     name (field type [pk], field type, ...) [option ...]
+     * </pre>
+     * where the optional storage option is either "heap" (the default) or
+     * "mapped" to read the table through a {@link MappedHeapFile}. The
+     * BufferPool quota of the table is given by the options "priority=low",
+     * "priority=normal" or "priority=high", "reserve=N" for the pages
+     * reserved to the table and "max=N" for the most pages it may hold,
+     * see {@link BufferQuota}.
      * @param catalogFile
      */
     public void loadSchema(String catalogFile) {
@@ -192,17 +275,40 @@ public class Catalog {
                         }
                     }
                 }
+                boolean mapped = false;
+                int reserve = 0;
+                int max = 0;
+                BufferQuota.Priority priority = BufferQuota.Priority.NORMAL;
+                String options = line.substring(line.indexOf(")") + 1).trim();
+                for (String option : options.isEmpty() ? new String[0] : options.split("\\s+")) {
+                    String lower = option.toLowerCase();
+                    if (lower.equals("mapped")) {
+                        mapped = true;
+                    } else if (lower.equals("heap")) {
+                        mapped = false;
+                    } else if (lower.startsWith("priority=")) {
+                        priority = BufferQuota.Priority.valueOf(lower.substring("priority=".length()).toUpperCase());
+                    } else if (lower.startsWith("reserve=")) {
+                        reserve = Integer.parseInt(lower.substring("reserve=".length()));
+                    } else if (lower.startsWith("max=")) {
+                        max = Integer.parseInt(lower.substring("max=".length()));
+                    } else {
+                        System.out.println("Unknown table option " + option);
+                        System.exit(0);
+                    }
+                }
                 Type[] typeAr = types.toArray(new Type[0]);
                 String[] namesAr = names.toArray(new String[0]);
                 TupleDesc t = new TupleDesc(typeAr, namesAr);
-                HeapFile tabHf = new HeapFile(new File(baseFolder+"/"+name + ".dat"), t);
-                addTable(tabHf,name,primaryKey);
+                File tableFile = new File(baseFolder+"/"+name + ".dat");
+                HeapFile tabHf = mapped ? new MappedHeapFile(tableFile, t) : new HeapFile(tableFile, t);
+                addTable(tabHf, name, primaryKey, new BufferQuota(reserve, max, priority));
                 System.out.println("Added table : " + name + " with schema " + t);
             }
         } catch (IOException e) {
             e.printStackTrace();
             System.exit(0);
-        } catch (IndexOutOfBoundsException e) {
+        } catch (IndexOutOfBoundsException | IllegalArgumentException e) {
             System.out.println ("Invalid catalog entry : " + line);
             System.exit(0);
         }
@@ -2,9 +2,11 @@ package simpledb.model;
 
 import simpledb.util.BufferPool;
 import simpledb.util.LogFile;
+import simpledb.util.eviction.EvictionPolicy;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
@@ -59,11 +61,25 @@ public class Database {
      * return it
      */
     public static BufferPool resetBufferPool(int pages) {
+        return resetBufferPool(new BufferPool(pages));
+    }
+
+    /**
+     * Method used for testing -- create a new instance of the buffer pool
+     * using the specified eviction policy and return it
+     */
+    public static BufferPool resetBufferPool(int pages, EvictionPolicy evictionPolicy) {
+        return resetBufferPool(new BufferPool(pages, evictionPolicy));
+    }
+
+    private static BufferPool resetBufferPool(BufferPool bufferPool) {
+        // 旧的pool不再使用，停掉它的定期dump，否则dump线程一直引用着它
+        getBufferPool().stopPageDumps();
         java.lang.reflect.Field bufferPoolF=null;
         try {
             bufferPoolF = Database.class.getDeclaredField("_bufferpool");
             bufferPoolF.setAccessible(true);
-            bufferPoolF.set(_instance.get(), new BufferPool(pages));
+            bufferPoolF.set(_instance.get(), bufferPool);
         } catch (NoSuchFieldException | SecurityException | IllegalArgumentException | IllegalAccessException e) {
             e.printStackTrace();
         }
@@ -71,8 +87,25 @@ public class Database {
         return _instance.get()._bufferpool;
     }
 
+    /**
+     * Turns on warm restarts of the buffer pool: reads the pages saved in
+     * dumpFile by the previous run back into the pool in the background,
+     * then saves the pool's hot pages to dumpFile every periodMillis
+     * milliseconds. Call it once the catalog is loaded.
+     *
+     * @return the number of pages read back, once reading is done
+     * @throws IOException if dumpFile exists but can't be read
+     */
+    public static Future<Integer> enableWarmRestart(File dumpFile, long periodMillis) throws IOException {
+        BufferPool bufferPool = getBufferPool();
+        Future<Integer> warmUp = bufferPool.warmUp(dumpFile);
+        bufferPool.startPageDumps(dumpFile, periodMillis);
+        return warmUp;
+    }
+
     // reset the database, used for unit tests only.
     public static void reset() {
+        getBufferPool().stopPageDumps();
         _instance.set(new Database());
     }
 
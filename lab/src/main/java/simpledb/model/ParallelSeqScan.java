@@ -0,0 +1,435 @@
+package simpledb.model;
+
+import simpledb.exception.DbException;
+import simpledb.exception.TransactionAbortedException;
+import simpledb.model.dbfile.DbFile;
+import simpledb.model.dbfile.HeapFile;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * ParallelSeqScan is a sequential scan split among the threads of a
+ * ForkJoinPool. The pages of the table are cut into morsels of
+ * {@link #MORSEL_PAGES} consecutive pages, and each worker scans the
+ * next morsel nobody has claimed until there are none left, so a slow
+ * worker never holds up the others.
+ * <p>
+ * Used as a DbIterator, the scan merges the tuples of its workers, which
+ * hand them over in batches through a bounded queue. Tuples come in no
+ * particular order. {@link #getPartitions} instead gives one iterator per
+ * downstream worker, each scanning its share of the morsels in the thread
+ * that calls it.
+ * <p>
+ * The workers read pages as a part of the transaction of the scan, and
+ * hold shared locks on them as SeqScan does. A table that isn't a
+ * HeapFile can't be split and is scanned by a single worker.
+ */
+public class ParallelSeqScan implements DbIterator {
+
+    private static final long serialVersionUID = 1L;
+
+    /** The number of consecutive pages a worker scans at once. */
+    public static final int MORSEL_PAGES = 64;
+
+    /** The number of tuples a worker hands over at once. */
+    static final int BATCH_TUPLES = 1024;
+
+    private static final long OFFER_WAIT_MILLIS = 10;
+
+    /** Marks the end of the batches in the queue. */
+    private static final List<Tuple> END = new ArrayList<>(0);
+
+    private final TransactionId transactionId;
+    private final int tableId;
+    private final String tableAlias;
+    private final int parallelism;
+    private final transient ForkJoinPool pool;
+    private final transient DbFile dbFile;
+
+    // 当前合并扫描的状态，open之前为null
+    private transient Scan scan;
+    private transient Iterator<Tuple> batch;
+
+    /**
+     * Creates a scan running on the common ForkJoinPool, with as many
+     * workers as the pool has threads.
+     *
+     * @see #ParallelSeqScan(TransactionId, int, String, int, ForkJoinPool)
+     */
+    public ParallelSeqScan(TransactionId tid, int tableid, String tableAlias) {
+        this(tid, tableid, tableAlias, ForkJoinPool.commonPool().getParallelism(), ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a parallel scan over the specified table as a part of the
+     * specified transaction.
+     *
+     * @param tid the transaction this scan is running as a part of
+     * @param tableid the table to scan
+     * @param tableAlias the alias of the table, prefixed to the field names
+     *     as SeqScan prefixes them
+     * @param parallelism the number of workers of the merged scan
+     * @param pool the pool the workers run on
+     * @throws IllegalArgumentException if parallelism is less than 1
+     */
+    public ParallelSeqScan(TransactionId tid, int tableid, String tableAlias, int parallelism, ForkJoinPool pool) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("ParallelSeqScan: needs at least one worker, got " + parallelism);
+        }
+        this.transactionId = tid;
+        this.tableId = tableid;
+        this.tableAlias = tableAlias;
+        this.parallelism = parallelism;
+        this.pool = pool;
+        this.dbFile = Database.getCatalog().getDatabaseFile(tableid);
+    }
+
+    public String getTableName() {
+        return Database.getCatalog().getTableName(tableId);
+    }
+
+    public String getAlias() {
+        return tableAlias;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * @return the number of morsels the table is made of, one if it isn't
+     *     a HeapFile
+     */
+    private int numMorsels() {
+        if (!(dbFile instanceof HeapFile)) {
+            return 1;
+        }
+        return (((HeapFile) dbFile).numPages() + MORSEL_PAGES - 1) / MORSEL_PAGES;
+    }
+
+    /**
+     * @return an iterator over the tuples of the specified morsel
+     */
+    private DbFileIterator morsel(int m) {
+        if (!(dbFile instanceof HeapFile)) {
+            return dbFile.iterator(transactionId);
+        }
+        HeapFile hf = (HeapFile) dbFile;
+        int from = m * MORSEL_PAGES;
+        return hf.iterator(transactionId, from, Math.min(hf.numPages(), from + MORSEL_PAGES));
+    }
+
+    /**
+     * Splits the scan into the specified number of iterators, partition i
+     * scanning morsels i, i + n, i + 2n and so on. Together the partitions
+     * return every tuple of the table once. Each partition is an
+     * independent DbIterator, to be opened, used and closed by one thread.
+     *
+     * @throws IllegalArgumentException if n is less than 1
+     */
+    public List<DbIterator> getPartitions(int n) {
+        if (n < 1) {
+            throw new IllegalArgumentException("ParallelSeqScan: needs at least one partition, got " + n);
+        }
+        List<DbIterator> partitions = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            partitions.add(new Partition(i, n));
+        }
+        return partitions;
+    }
+
+    @Override
+    public void open() throws DbException, TransactionAbortedException {
+        close();
+        scan = new Scan(numMorsels());
+        scan.start();
+    }
+
+    @Override
+    public boolean hasNext() throws DbException, TransactionAbortedException {
+        if (scan == null) {
+            throw new IllegalStateException("ParallelSeqScan: not open");
+        }
+        while (batch == null || !batch.hasNext()) {
+            List<Tuple> next = scan.take();
+            if (next == null) {
+                return false;
+            }
+            batch = next.iterator();
+        }
+        return true;
+    }
+
+    @Override
+    public Tuple next() throws DbException, TransactionAbortedException, NoSuchElementException {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return batch.next();
+    }
+
+    @Override
+    public void rewind() throws DbException, TransactionAbortedException {
+        open();
+    }
+
+    @Override
+    public TupleDesc getTupleDesc() {
+        return SeqScan.aliasedTupleDesc(dbFile.getTupleDesc(), tableAlias);
+    }
+
+    /**
+     * Stops the workers and waits for them to release their pages.
+     */
+    @Override
+    public void close() {
+        if (scan != null) {
+            scan.cancel();
+            scan = null;
+        }
+        batch = null;
+    }
+
+    /**
+     * One run of the merged scan, from open to close.
+     */
+    private class Scan {
+        private final int numMorsels;
+        private final AtomicInteger nextMorsel = new AtomicInteger();
+        private final AtomicInteger running = new AtomicInteger();
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
+        // 有界队列：消费者跟不上时worker阻塞，限制扫描占用的内存
+        private final ArrayBlockingQueue<List<Tuple>> queue;
+        private final List<ForkJoinTask<?>> workers = new ArrayList<>();
+        // 消费者关闭了扫描；worker失败只记在failure里，END仍要放进队列
+        private volatile boolean closed = false;
+        private boolean finished = false;
+
+        Scan(int numMorsels) {
+            this.numMorsels = numMorsels;
+            this.queue = new ArrayBlockingQueue<>(2 * parallelism);
+        }
+
+        void start() {
+            int n = Math.max(1, Math.min(parallelism, numMorsels));
+            running.set(n);
+            for (int i = 0; i < n; i++) {
+                workers.add(pool.submit(this::work));
+            }
+        }
+
+        private void work() {
+            try {
+                List<Tuple> tuples = new ArrayList<>(BATCH_TUPLES);
+                int m;
+                while (!stopped() && (m = nextMorsel.getAndIncrement()) < numMorsels) {
+                    DbFileIterator it = morsel(m);
+                    it.open();
+                    try {
+                        while (!stopped() && it.hasNext()) {
+                            tuples.add(it.next());
+                            if (tuples.size() == BATCH_TUPLES) {
+                                put(tuples);
+                                tuples = new ArrayList<>(BATCH_TUPLES);
+                            }
+                        }
+                    } finally {
+                        it.close();
+                    }
+                }
+                if (!tuples.isEmpty()) {
+                    put(tuples);
+                }
+            } catch (Throwable e) {
+                // the scan fails as a whole, the other workers may stop
+                failure.compareAndSet(null, e);
+            } finally {
+                if (running.decrementAndGet() == 0) {
+                    put(END);
+                }
+            }
+        }
+
+        /**
+         * @return true once the workers should stop scanning, because the
+         *     scan was closed or a worker failed
+         */
+        private boolean stopped() {
+            return closed || failure.get() != null;
+        }
+
+        /**
+         * Queues a batch, blocking while the queue is full. A batch of
+         * tuples is dropped once the scan is stopped, but END is dropped
+         * only once the scan is closed, since the consumer waits for it.
+         * The pool is told about the blocking so that it can run other
+         * tasks meanwhile.
+         */
+        private void put(List<Tuple> tuples) {
+            ForkJoinPool.ManagedBlocker blocker = new ForkJoinPool.ManagedBlocker() {
+                private boolean queued = false;
+
+                @Override
+                public boolean block() throws InterruptedException {
+                    if (!isReleasable()) {
+                        queued = queue.offer(tuples, OFFER_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+                    }
+                    return isReleasable();
+                }
+
+                @Override
+                public boolean isReleasable() {
+                    if (queued || closed || (tuples != END && failure.get() != null)) {
+                        return true;
+                    }
+                    queued = queue.offer(tuples);
+                    return queued;
+                }
+            };
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    ForkJoinPool.managedBlock(blocker);
+                    break;
+                } catch (InterruptedException e) {
+                    // an interrupted worker fails the scan, but still hands over END
+                    interrupted = true;
+                    failure.compareAndSet(null, new DbException("ParallelSeqScan: interrupted while scanning "
+                            + getTableName()));
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * @return the next batch, or null once every worker is done
+         */
+        List<Tuple> take() throws DbException, TransactionAbortedException {
+            if (finished) {
+                return null;
+            }
+            List<Tuple> tuples;
+            try {
+                tuples = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new DbException("ParallelSeqScan: interrupted while scanning " + getTableName());
+            }
+            if (tuples != END) {
+                return tuples;
+            }
+            finished = true;
+            Throwable e = failure.get();
+            if (e instanceof TransactionAbortedException) {
+                throw (TransactionAbortedException) e;
+            }
+            if (e instanceof DbException) {
+                throw (DbException) e;
+            }
+            if (e instanceof RuntimeException) {
+                throw (RuntimeException) e;
+            }
+            if (e instanceof Error) {
+                throw (Error) e;
+            }
+            return null;
+        }
+
+        void cancel() {
+            closed = true;
+            for (ForkJoinTask<?> worker : workers) {
+                worker.quietlyJoin();
+            }
+        }
+    }
+
+    /**
+     * The share of the morsels of one downstream worker.
+     */
+    private class Partition implements DbIterator {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int first;
+        private final int step;
+        private int numMorsels;
+        private int current;
+        private DbFileIterator it;
+        private boolean opened = false;
+
+        Partition(int first, int step) {
+            this.first = first;
+            this.step = step;
+        }
+
+        @Override
+        public void open() throws DbException, TransactionAbortedException {
+            close();
+            numMorsels = numMorsels();
+            current = first;
+            it = openMorsel();
+            opened = true;
+        }
+
+        private DbFileIterator openMorsel() throws DbException, TransactionAbortedException {
+            if (current >= numMorsels) {
+                return null;
+            }
+            DbFileIterator morsel = morsel(current);
+            morsel.open();
+            return morsel;
+        }
+
+        @Override
+        public boolean hasNext() throws DbException, TransactionAbortedException {
+            if (!opened) {
+                throw new IllegalStateException("ParallelSeqScan: partition not open");
+            }
+            // 当前morsel读完了就换下一个
+            while (it != null && !it.hasNext()) {
+                it.close();
+                current += step;
+                it = openMorsel();
+            }
+            return it != null;
+        }
+
+        @Override
+        public Tuple next() throws DbException, TransactionAbortedException, NoSuchElementException {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return it.next();
+        }
+
+        @Override
+        public void rewind() throws DbException, TransactionAbortedException {
+            open();
+        }
+
+        @Override
+        public TupleDesc getTupleDesc() {
+            return ParallelSeqScan.this.getTupleDesc();
+        }
+
+        @Override
+        public void close() {
+            if (it != null) {
+                it.close();
+                it = null;
+            }
+            opened = false;
+        }
+    }
+}
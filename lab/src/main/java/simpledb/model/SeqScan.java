@@ -105,8 +105,14 @@ public class SeqScan implements DbIterator {
     @Override
     public TupleDesc getTupleDesc() {
         // some code goes here
+        return aliasedTupleDesc(dbFile.getTupleDesc(), tableAlias);
+    }
 
-        final TupleDesc td = dbFile.getTupleDesc();
+    /**
+     * @return the specified TupleDesc with its field names prefixed with
+     *     the alias, "null" standing for a missing alias or name
+     */
+    static TupleDesc aliasedTupleDesc(TupleDesc td, String tableAlias) {
         Type[] typeAr = new Type[td.numFields()];
         String[] fieldAr = new String[td.numFields()];
 
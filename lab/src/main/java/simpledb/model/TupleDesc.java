@@ -136,6 +136,27 @@ public class TupleDesc implements Serializable {
         return items.get(i).fieldType;
     }
 
+    /**
+     * Gets the offset in bytes of the ith field within a tuple of this
+     * TupleDesc, i.e. the sum of the sizes of the preceding fields.
+     *
+     * @param i
+     *            The index of the field. It must be a valid index.
+     * @return the offset of the ith field
+     * @throws NoSuchElementException
+     *             if i is not a valid field reference.
+     */
+    public int getFieldOffset(int i) throws NoSuchElementException {
+        if (i >= items.size()) {
+            throw new NoSuchElementException();
+        }
+        int offset = 0;
+        for (int j = 0; j < i; j++) {
+            offset += items.get(j).fieldType.getLen();
+        }
+        return offset;
+    }
+
     /**
      * Find the index of the field with a given name.
      * 
@@ -0,0 +1,323 @@
+package simpledb.model.dbfile;
+
+import simpledb.enums.Type;
+import simpledb.model.Tuple;
+import simpledb.model.TupleDesc;
+import simpledb.util.BufferPool;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * BulkLoader writes a new HeapFile from a stream of tuples or rows of ints,
+ * without going through the BufferPool or the transactions.
+ * <p>
+ * Rows are staged until they fill a batch of pages. The page images of the
+ * batch are then built in one buffer, split among the build threads if
+ * there are several, and written with one sequential write at a page
+ * aligned offset. The file is in the format of {@link HeapFileEncoder}:
+ * full pages in load order, a header if the page size isn't the default,
+ * and one empty page if nothing was loaded.
+ * <p>
+ * The file is complete on disk once {@link #close} returns. Tables must
+ * not be read from the file before, and a table that was open on it must
+ * be added to the Catalog again.
+ *
+ * @NotThreadsafe
+ */
+public class BulkLoader implements Closeable {
+
+    /** The default size of the batches of pages written at once. */
+    public static final int DEFAULT_BATCH_BYTES = 4 << 20;
+
+    private static final AtomicInteger THREAD_IDS = new AtomicInteger();
+
+    private final File file;
+    private final TupleDesc td;
+    private final Type[] types;
+    private final int[] fieldOffsets;
+    private final boolean allInts;
+    private final int pageSize;
+    private final int tupleSize;
+    private final int numSlots;
+    private final int headerBytes;
+    private final int batchPages;
+    private final byte[] zeroes;
+    private final FileChannel channel;
+    private final ByteBuffer batch;
+    // 本批次暂存的行，元素是Tuple或int[]
+    private final Object[] rows;
+    private int staged;
+    private final int threads;
+    private ThreadPoolExecutor executor;
+    private long tupleCount;
+    private int pageCount;
+    private boolean closed;
+
+    /**
+     * Creates a loader of a file of default sized pages, building pages in
+     * the loading thread.
+     *
+     * @see #BulkLoader(File, TupleDesc, int, int)
+     */
+    public BulkLoader(File file, TupleDesc td) throws IOException {
+        this(file, td, BufferPool.getPageSize(), 1);
+    }
+
+    /**
+     * Creates the specified file, replacing the file there was.
+     *
+     * @param file the file to load
+     * @param td the schema of the tuples
+     * @param pageSize the page size of the file
+     * @param threads the number of threads building pages, 1 to build them
+     *     in the loading thread
+     * @throws IllegalArgumentException if the page size is invalid or a
+     *     page of that size can't hold a tuple
+     */
+    public BulkLoader(File file, TupleDesc td, int pageSize, int threads) throws IOException {
+        if (threads < 1) {
+            throw new IllegalArgumentException("BulkLoader: needs at least one thread, got " + threads);
+        }
+        byte[] fileHeader = pageSize == BufferPool.getPageSize() ? new byte[0] : HeapFile.createHeader(pageSize);
+        this.file = file;
+        this.td = td;
+        this.types = new Type[td.numFields()];
+        this.fieldOffsets = new int[td.numFields()];
+        boolean ints = true;
+        for (int i = 0; i < types.length; i++) {
+            types[i] = td.getFieldType(i);
+            fieldOffsets[i] = td.getFieldOffset(i);
+            ints &= types[i] == Type.INT_TYPE;
+        }
+        this.allInts = ints;
+        this.pageSize = pageSize;
+        this.tupleSize = td.getSize();
+        // 与HeapPage相同的布局：每个slot占tupleSize字节加上header中的1bit
+        this.numSlots = (pageSize * 8) / (tupleSize * 8 + 1);
+        if (numSlots == 0) {
+            throw new IllegalArgumentException("BulkLoader: a page of " + pageSize + " bytes can't hold a tuple");
+        }
+        this.headerBytes = (numSlots + 7) / 8;
+        this.batchPages = Math.max(1, DEFAULT_BATCH_BYTES / pageSize);
+        this.zeroes = new byte[pageSize];
+        this.batch = ByteBuffer.allocateDirect(batchPages * pageSize);
+        this.rows = new Object[batchPages * numSlots];
+        this.staged = 0;
+        this.threads = threads;
+        this.tupleCount = 0;
+        this.pageCount = 0;
+        this.closed = false;
+
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        try {
+            write(ByteBuffer.wrap(fileHeader));
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the number of tuples loaded so far
+     */
+    public long getTupleCount() {
+        return tupleCount;
+    }
+
+    /**
+     * @return the number of pages written so far
+     */
+    public int getPageCount() {
+        return pageCount;
+    }
+
+    /**
+     * Loads a tuple. The tuple is staged until its batch of pages fills
+     * and is written then, or when the loader is closed if the batch is
+     * the last one; it must not be modified before. Its RecordId is not
+     * set.
+     *
+     * @throws IllegalArgumentException if the tuple doesn't have the schema
+     *     of the loader
+     */
+    public void add(Tuple t) throws IOException {
+        if (t.getTupleDesc() != td && !td.equals(t.getTupleDesc())) {
+            throw new IllegalArgumentException("BulkLoader: tuple " + t + " doesn't match the schema " + td);
+        }
+        stage(t);
+    }
+
+    /**
+     * Loads a row of a schema of int fields only. The row is staged until
+     * its batch of pages fills and is written then, or when the loader is
+     * closed if the batch is the last one; the array must not be modified
+     * before.
+     *
+     * @throws IllegalArgumentException if the schema has other fields or
+     *     the row has another number of fields
+     */
+    public void addRow(int... row) throws IOException {
+        if (!allInts || row.length != types.length) {
+            throw new IllegalArgumentException("BulkLoader: a row of " + row.length
+                    + " ints doesn't match the schema " + td);
+        }
+        stage(row);
+    }
+
+    /**
+     * Loads the tuples of the specified iterator.
+     */
+    public void addAll(Iterator<? extends Tuple> tuples) throws IOException {
+        while (tuples.hasNext()) {
+            add(tuples.next());
+        }
+    }
+
+    private void stage(Object row) throws IOException {
+        if (closed) {
+            throw new IllegalStateException("BulkLoader: " + file + " is closed");
+        }
+        rows[staged++] = row;
+        tupleCount++;
+        if (staged == rows.length) {
+            flushBatch();
+        }
+    }
+
+    /**
+     * Builds the pages of the staged rows and writes them.
+     */
+    private void flushBatch() throws IOException {
+        int pages = Math.max(1, (staged + numSlots - 1) / numSlots);
+        if (threads == 1 || pages == 1) {
+            buildPages(0, pages);
+        } else {
+            buildPagesInParallel(pages);
+        }
+        batch.clear();
+        batch.limit(pages * pageSize);
+        write(batch);
+        pageCount += pages;
+        // 释放已写入的行，便于回收
+        Arrays.fill(rows, 0, staged, null);
+        staged = 0;
+    }
+
+    private void buildPagesInParallel(int pages) throws IOException {
+        if (executor == null) {
+            executor = new ThreadPoolExecutor(threads, threads, 1, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+                Thread t = new Thread(r, "BulkLoader-" + THREAD_IDS.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+            executor.allowCoreThreadTimeOut(true);
+        }
+        int perTask = (pages + threads - 1) / threads;
+        List<Future<?>> tasks = new ArrayList<>(threads);
+        for (int from = 0; from < pages; from += perTask) {
+            final int first = from;
+            final int last = Math.min(pages, from + perTask);
+            tasks.add(executor.submit(() -> buildPages(first, last)));
+        }
+        for (Future<?> task : tasks) {
+            try {
+                task.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("BulkLoader: interrupted while building pages of " + file);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new IOException("BulkLoader: failed to build pages of " + file, e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Builds pages [first, last) of the batch from the staged rows. Every
+     * byte of the pages is written, the buffer still holds the previous
+     * batch.
+     */
+    private void buildPages(int first, int last) {
+        ByteBuffer buf = batch.duplicate();
+        for (int p = first; p < last; p++) {
+            int base = p * pageSize;
+            int firstRow = p * numSlots;
+            int n = Math.min(numSlots, staged - firstRow);
+
+            // header：前n个slot被占用，对应的bit置1
+            for (int i = 0; i < headerBytes; i++) {
+                int used = Math.max(0, Math.min(8, n - i * 8));
+                buf.put(base + i, (byte) ((1 << used) - 1));
+            }
+            for (int r = 0; r < n; r++) {
+                int offset = base + headerBytes + r * tupleSize;
+                Object row = rows[firstRow + r];
+                if (row instanceof int[]) {
+                    int[] ints = (int[]) row;
+                    for (int j = 0; j < ints.length; j++) {
+                        buf.putInt(offset + fieldOffsets[j], ints[j]);
+                    }
+                } else {
+                    Tuple t = (Tuple) row;
+                    for (int j = 0; j < types.length; j++) {
+                        types[j].write(buf, offset + fieldOffsets[j], t.getField(j));
+                    }
+                }
+            }
+            // empty slots and the padding are zeroes
+            int used = headerBytes + n * tupleSize;
+            buf.position(base + used);
+            buf.put(zeroes, 0, pageSize - used);
+        }
+    }
+
+    private void write(ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) {
+            channel.write(buf);
+        }
+    }
+
+    /**
+     * Writes the staged rows and forces the file to disk.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (staged > 0 || pageCount == 0) {
+                // an empty table still has an empty page, as HeapFileEncoder writes it
+                flushBatch();
+            }
+            channel.force(false);
+        } finally {
+            channel.close();
+            if (executor != null) {
+                executor.shutdown();
+            }
+        }
+        // the free space map of the table the file held before doesn't describe the new pages
+        Files.deleteIfExists(FreeSpaceMap.sidecarFile(file).toPath());
+    }
+}
@@ -9,7 +9,9 @@ import simpledb.exception.DbException;
 import simpledb.exception.TransactionAbortedException;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.List;
 
 /**
  * The interface for database files on disk. Each table is represented by a
@@ -26,6 +28,48 @@ public interface DbFile {
      */
     Page readPage(PageId id);
 
+    /**
+     * Read the specified page from disk into the specified buffer, which
+     * the page may keep using until {@link Page#detach} is called. Files
+     * that can't read into a given buffer ignore it.
+     *
+     * @param frame a buffer of exactly one page, or null to allocate a new one
+     * @throws IllegalArgumentException if the page does not exist in this file.
+     */
+    default Page readPage(PageId id, ByteBuffer frame) {
+        return readPage(id);
+    }
+
+    /**
+     * Read the specified pages from disk, each into its buffer like
+     * {@link #readPage(PageId, ByteBuffer)}. Files that can read runs of
+     * adjacent pages with a single request do so.
+     *
+     * @param ids the pages to read
+     * @param frames a buffer per page, or null; buffers may be null as well
+     * @return the pages, in the order of ids
+     * @throws IllegalArgumentException if a page does not exist in this file.
+     */
+    default List<Page> readPages(List<PageId> ids, List<ByteBuffer> frames) {
+        List<Page> pages = new ArrayList<>(ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            pages.add(readPage(ids.get(i), frames == null ? null : frames.get(i)));
+        }
+        return pages;
+    }
+
+    /**
+     * Build the specified page from an image returned by
+     * {@link Page#getPageData} earlier, without reading from disk. The page
+     * may keep using data until {@link Page#detach} is called.
+     *
+     * @return the page, or null if this file can't build pages from images
+     * @throws IOException if data is not a valid image of a page of this file
+     */
+    default Page decodePage(PageId id, ByteBuffer data) throws IOException {
+        return null;
+    }
+
     /**
      * Push the specified page to disk.
      *
@@ -35,6 +79,19 @@ public interface DbFile {
      */
     void writePage(Page p) throws IOException;
 
+    /**
+     * Push the specified pages to disk. Files that can write runs of
+     * adjacent pages in one request override this to coalesce them.
+     *
+     * @param pages the pages to write, sorted by page number
+     * @throws IOException if a write fails
+     */
+    default void writePages(List<Page> pages) throws IOException {
+        for (Page p : pages) {
+            writePage(p);
+        }
+    }
+
     /**
      * Inserts the specified tuple to the file on behalf of transaction.
      * This method will acquire a lock on the affected pages of the file, and
@@ -91,4 +148,11 @@ public interface DbFile {
      * @return TupleDesc of this DbFile.
      */
     TupleDesc getTupleDesc();
+
+    /**
+     * Releases the operating system resources (e.g. open file handles) held
+     * by this DbFile. Called by the Catalog when the table is removed.
+     */
+    default void close() {
+    }
 }
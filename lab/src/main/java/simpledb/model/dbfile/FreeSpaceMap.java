@@ -0,0 +1,211 @@
+package simpledb.model.dbfile;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * FreeSpaceMap keeps one byte per page of a HeapFile telling how full the
+ * page is, so that an insert finds a page with an empty slot without reading
+ * the pages of the file one by one.
+ * <p>
+ * The byte of a page is 0 if the page is full, and otherwise its fraction
+ * of empty slots in 255ths, at least 1. Pages the map knows nothing about,
+ * e.g. pages added to the file by another program, count as empty. The map
+ * is only a hint: callers check the page itself and report what they found
+ * with {@link #update}. A page wrongly marked full wastes its empty slots
+ * until it is updated again, a page wrongly marked free costs one page read.
+ * <p>
+ * The bytes are kept in memory and stored in a sidecar file next to the
+ * table, e.g. table.fsm for table.dat, one byte per page in page order.
+ * {@link #flush} writes only the bytes changed since the last flush.
+ *
+ * @Threadsafe
+ */
+public class FreeSpaceMap {
+
+    /** The byte of a page without empty slots. */
+    public static final int FULL = 0;
+    /** The byte of a page without tuples, or of a page the map knows nothing about. */
+    public static final int EMPTY = 255;
+
+    private final File file;
+    private byte[] fullness;
+    private int numPages;
+    // 有空闲slot的页，与fullness中非0的字节一一对应
+    private final BitSet hasSpace;
+    // 编号小于cursor的页都没有空闲slot，插入从这里开始找
+    private int cursor;
+    // [dirtyFrom, dirtyTo)之间的字节在上次flush后被修改过
+    private int dirtyFrom;
+    private int dirtyTo;
+    private boolean loaded;
+
+    /**
+     * @param file the sidecar file the map is stored in, read on first use
+     */
+    public FreeSpaceMap(File file) {
+        this.file = file;
+        this.fullness = new byte[0];
+        this.numPages = 0;
+        this.hasSpace = new BitSet();
+        this.cursor = 0;
+        this.dirtyFrom = Integer.MAX_VALUE;
+        this.dirtyTo = 0;
+        this.loaded = false;
+    }
+
+    /**
+     * @return the sidecar file of the free space map of the specified table
+     *     file: its name with the extension .dat replaced by, or any other
+     *     name followed by, .fsm
+     */
+    public static File sidecarFile(File tableFile) {
+        String name = tableFile.getName();
+        if (name.endsWith(".dat")) {
+            name = name.substring(0, name.length() - ".dat".length());
+        }
+        return new File(tableFile.getAbsoluteFile().getParentFile(), name + ".fsm");
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return the fullness byte of a page with the specified number of
+     *     empty slots out of numSlots
+     */
+    public static int fullnessOf(int emptySlots, int numSlots) {
+        if (emptySlots <= 0) {
+            return FULL;
+        }
+        return Math.max(1, (int) ((long) emptySlots * EMPTY / numSlots));
+    }
+
+    /**
+     * Returns the first page of the file that may have an empty slot.
+     * Pages are searched from the lowest page that may have one, and that
+     * page only moves back when a page before it gets room again, so a
+     * series of inserts finds its pages in constant amortized time.
+     *
+     * @param filePages the number of pages in the file
+     * @return the page number, or -1 if all pages are full
+     */
+    public synchronized int findPage(int filePages) {
+        cover(filePages);
+        int pgNo = hasSpace.nextSetBit(cursor);
+        if (pgNo < 0 || pgNo >= filePages) {
+            cursor = filePages;
+            return -1;
+        }
+        cursor = pgNo;
+        return pgNo;
+    }
+
+    /**
+     * Records the number of empty slots found on a page.
+     */
+    public synchronized void update(int pgNo, int emptySlots, int numSlots) {
+        cover(pgNo + 1);
+        byte value = (byte) fullnessOf(emptySlots, numSlots);
+        if (fullness[pgNo] == value) {
+            return;
+        }
+        fullness[pgNo] = value;
+        if (value == FULL) {
+            hasSpace.clear(pgNo);
+        } else {
+            hasSpace.set(pgNo);
+            cursor = Math.min(cursor, pgNo);
+        }
+        dirtyFrom = Math.min(dirtyFrom, pgNo);
+        dirtyTo = Math.max(dirtyTo, pgNo + 1);
+    }
+
+    /**
+     * Records the number of empty slots of a page read from the file, if
+     * the map was already used. Pages are read while no transaction has
+     * them dirty, so this corrects the bytes of pages whose changes were
+     * rolled back, without loading the maps of tables that are only read.
+     */
+    public synchronized void refresh(int pgNo, int emptySlots, int numSlots) {
+        if (loaded) {
+            update(pgNo, emptySlots, numSlots);
+        }
+    }
+
+    /**
+     * @return the fullness byte of the specified page, {@link #EMPTY} if
+     *     the map knows nothing about it
+     */
+    public synchronized int getFullness(int pgNo) {
+        cover(0);
+        return pgNo < numPages ? fullness[pgNo] & 0xff : EMPTY;
+    }
+
+    /**
+     * Writes the bytes changed since the last flush to the sidecar file.
+     */
+    public synchronized void flush() throws IOException {
+        if (dirtyFrom >= dirtyTo) {
+            return;
+        }
+        try (FileChannel fc = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            ByteBuffer buf = ByteBuffer.wrap(fullness, dirtyFrom, dirtyTo - dirtyFrom);
+            while (buf.hasRemaining()) {
+                fc.write(buf, buf.position());
+            }
+        }
+        dirtyFrom = Integer.MAX_VALUE;
+        dirtyTo = 0;
+    }
+
+    /**
+     * Loads the sidecar file on first use and extends the map to the
+     * specified number of pages, new pages counting as empty.
+     */
+    private void cover(int pages) {
+        if (!loaded) {
+            loaded = true;
+            load();
+        }
+        if (pages <= numPages) {
+            return;
+        }
+        if (pages > fullness.length) {
+            fullness = Arrays.copyOf(fullness, Math.max(pages, fullness.length * 2));
+        }
+        Arrays.fill(fullness, numPages, pages, (byte) EMPTY);
+        hasSpace.set(numPages, pages);
+        cursor = Math.min(cursor, numPages);
+        dirtyFrom = Math.min(dirtyFrom, numPages);
+        dirtyTo = Math.max(dirtyTo, pages);
+        numPages = pages;
+    }
+
+    private void load() {
+        if (!file.exists()) {
+            return;
+        }
+        try {
+            byte[] stored = Files.readAllBytes(file.toPath());
+            fullness = stored;
+            numPages = stored.length;
+            for (int pgNo = 0; pgNo < numPages; pgNo++) {
+                if (stored[pgNo] != FULL) {
+                    hasSpace.set(pgNo);
+                }
+            }
+        } catch (IOException e) {
+            // the map is a hint, an unreadable one is rebuilt as pages are visited
+            fullness = new byte[0];
+            numPages = 0;
+        }
+    }
+}
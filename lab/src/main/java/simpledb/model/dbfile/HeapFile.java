@@ -2,19 +2,25 @@ package simpledb.model.dbfile;
 
 import simpledb.exception.DbException;
 import simpledb.exception.TransactionAbortedException;
+import simpledb.log.Debug;
 import simpledb.model.*;
 import simpledb.model.page.HeapPage;
 import simpledb.model.page.Page;
 import simpledb.model.pageid.HeapPageId;
 import simpledb.model.pageid.PageId;
+import simpledb.util.BufferAccessStrategy;
 import simpledb.util.BufferPool;
+import simpledb.util.ReadAhead;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
 
 /**
@@ -23,14 +29,55 @@ import java.util.NoSuchElementException;
  * size, and the file is simply a collection of those pages. HeapFile works
  * closely with HeapPage. The format of HeapPages is described in the HeapPage
  * constructor.
+ * <p>
+ * Files with the default page size ({@link BufferPool#getPageSize()}) are
+ * simply their pages. A file with any other page size starts with a header
+ * of one page recording the page size: the int {@link #HEADER_MAGIC}, the
+ * int {@link #HEADER_VERSION} and the int page size, padded with zeroes.
+ * Page n of such a file starts at byte (n + 1) * pageSize, so pages stay
+ * aligned to their size.
+ * <p>
+ * Files grow in extents: when an insert needs a new page, the file is
+ * extended by as many zeroed pages as it already has, up to
+ * {@link #getMaxExtentBytes()}, in one sequential write. {@link #numPages()}
+ * counts the pages handed out, the rest of the extent is used by later
+ * inserts and cut off when the file is closed. Zeroed pages are empty
+ * pages, so an extent left behind by a crash is just empty pages.
  * 
  * @see HeapPage#HeapPage
  * @author Sam Madden
  */
 public class HeapFile implements DbFile {
 
+    /** The first int of a file header, "SDBF". */
+    public static final int HEADER_MAGIC = 0x53444246;
+    /** The version of the file header format. */
+    public static final int HEADER_VERSION = 1;
+    /** Bounds of the page size of a file; page sizes must be powers of two. */
+    public static final int MIN_PAGE_SIZE = 512;
+    public static final int MAX_PAGE_SIZE = 1 << 20;
+    /** The default bound of the extents files grow by. */
+    public static final int DEFAULT_MAX_EXTENT_BYTES = 1 << 20;
+
+    private static final int HEADER_FIELDS_BYTES = 12;
+
     private final File dbFile;
     private final TupleDesc tupleDesc;
+    // 每个文件只打开一次，按偏移量读写，并发读取不会争抢文件指针
+    private volatile FileChannel channel;
+    // 页大小只对新建的空文件生效，已有文件的页大小由文件头决定
+    private final int requestedPageSize;
+    private volatile boolean layoutKnown;
+    private int pageSize;
+    private long dataOffset;
+    private final FreeSpaceMap freeSpace;
+    // 逻辑页数，文件末尾预分配但还没有分出去的页不计算在内
+    private volatile int logicalPages;
+    // 上次看到的文件长度，文件被其他途径改变时据此重新计算逻辑页数
+    private volatile long physicalLength;
+    private volatile int maxExtentBytes;
+    private boolean extended;
+
     /**
      * Constructs a heap file backed by the specified file.
      * 
@@ -39,9 +86,129 @@ public class HeapFile implements DbFile {
      *            file.
      */
     public HeapFile(File f, TupleDesc td) {
+        this(f, td, BufferPool.getPageSize());
+    }
+
+    /**
+     * Constructs a heap file backed by the specified file. The page size is
+     * only used if the file is empty; the page size of an existing file is
+     * read from its header.
+     *
+     * @param f the file that stores the on-disk backing store for this heap file.
+     * @param pageSize the page size of the file if it is new
+     * @throws IllegalArgumentException if the page size is not a power of two
+     *     between MIN_PAGE_SIZE and MAX_PAGE_SIZE
+     */
+    public HeapFile(File f, TupleDesc td, int pageSize) {
         // some code goes here
+        checkPageSize(pageSize);
         this.dbFile = f;
         this.tupleDesc = td;
+        this.requestedPageSize = pageSize;
+        this.layoutKnown = false;
+        this.freeSpace = new FreeSpaceMap(FreeSpaceMap.sidecarFile(f));
+        this.logicalPages = 0;
+        this.physicalLength = -1;
+        this.maxExtentBytes = DEFAULT_MAX_EXTENT_BYTES;
+        this.extended = false;
+    }
+
+    private static void checkPageSize(int pageSize) {
+        if (!isValidPageSize(pageSize)) {
+            throw new IllegalArgumentException("HeapFile: page size " + pageSize
+                    + " is not a power of two between " + MIN_PAGE_SIZE + " and " + MAX_PAGE_SIZE);
+        }
+    }
+
+    private static boolean isValidPageSize(int pageSize) {
+        return pageSize >= MIN_PAGE_SIZE && pageSize <= MAX_PAGE_SIZE && Integer.bitCount(pageSize) == 1;
+    }
+
+    /**
+     * Returns the header of a file with the specified page size.
+     *
+     * @return the header, exactly one page long
+     */
+    public static byte[] createHeader(int pageSize) {
+        checkPageSize(pageSize);
+        byte[] header = new byte[pageSize];
+        ByteBuffer.wrap(header).putInt(HEADER_MAGIC).putInt(HEADER_VERSION).putInt(pageSize);
+        return header;
+    }
+
+    /**
+     * @return the page size recorded in the specified file header, or 0 if
+     *     it isn't a valid header
+     */
+    private static int parseHeader(ByteBuffer header) {
+        if (header.remaining() < HEADER_FIELDS_BYTES
+                || header.getInt(0) != HEADER_MAGIC || header.getInt(4) != HEADER_VERSION) {
+            return 0;
+        }
+        int pageSize = header.getInt(8);
+        return isValidPageSize(pageSize) ? pageSize : 0;
+    }
+
+    /**
+     * Reads the page size from the file header on first use. An empty file
+     * gets a header if its page size isn't the default one.
+     */
+    private void ensureLayout() {
+        if (!layoutKnown) {
+            readLayout();
+        }
+    }
+
+    private synchronized void readLayout() {
+        if (layoutKnown) {
+            return;
+        }
+        pageSize = requestedPageSize;
+        dataOffset = requestedPageSize == BufferPool.getPageSize() ? 0 : requestedPageSize;
+        if (!dbFile.exists()) {
+            // decided once the file exists
+            return;
+        }
+        try {
+            FileChannel fc = getChannel();
+            if (fc.size() == 0) {
+                if (dataOffset > 0) {
+                    ByteBuffer header = ByteBuffer.wrap(createHeader(pageSize));
+                    while (header.hasRemaining()) {
+                        fc.write(header, header.position());
+                    }
+                }
+            } else {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_FIELDS_BYTES);
+                while (header.hasRemaining() && fc.read(header, header.position()) >= 0) {
+                    // read until the buffer is full or the file ends
+                }
+                header.flip();
+                int headerPageSize = parseHeader(header);
+                // a file without header is a file of default sized pages
+                pageSize = headerPageSize > 0 ? headerPageSize : BufferPool.getPageSize();
+                dataOffset = headerPageSize > 0 ? headerPageSize : 0;
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("HeapFile: failed to read the header of " + dbFile + ": " + e.getMessage());
+        }
+        layoutKnown = true;
+    }
+
+    /**
+     * @return the size of the pages of this file
+     */
+    public int getPageSize() {
+        ensureLayout();
+        return pageSize;
+    }
+
+    /**
+     * @return the offset of the specified page in the file
+     */
+    protected long getPageOffset(int pgNo) {
+        ensureLayout();
+        return dataOffset + (long) pgNo * pageSize;
     }
 
     /**
@@ -54,6 +221,33 @@ public class HeapFile implements DbFile {
         return dbFile;
     }
 
+    /**
+     * @return the bound of the extents this file grows by, in bytes
+     */
+    public int getMaxExtentBytes() {
+        return maxExtentBytes;
+    }
+
+    /**
+     * Set the bound of the extents this file grows by. Extents are at
+     * least one page, 0 grows the file one page at a time.
+     *
+     * @param maxExtentBytes the bound, in bytes
+     */
+    public void setMaxExtentBytes(int maxExtentBytes) {
+        if (maxExtentBytes < 0) {
+            throw new IllegalArgumentException("HeapFile: negative extent bound " + maxExtentBytes);
+        }
+        this.maxExtentBytes = maxExtentBytes;
+    }
+
+    /**
+     * @return the map inserts use to find pages with empty slots
+     */
+    public FreeSpaceMap getFreeSpaceMap() {
+        return freeSpace;
+    }
+
     /**
      * Returns an ID uniquely identifying this HeapFile. Implementation note:
      * you will need to generate this tableid somewhere ensure that each
@@ -81,32 +275,226 @@ public class HeapFile implements DbFile {
         return tupleDesc;
     }
 
+    /**
+     * Returns the channel of the backing file, opening it on first use or
+     * after it was closed. Only opening the channel takes the lock of the
+     * file, page reads and writes use the open channel without it.
+     */
+    protected FileChannel getChannel() throws IOException {
+        FileChannel fc = channel;
+        if (fc != null && fc.isOpen()) {
+            return fc;
+        }
+        synchronized (this) {
+            if (channel == null || !channel.isOpen()) {
+                channel = FileChannel.open(dbFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+            }
+            return channel;
+        }
+    }
+
     @Override
     // see DbFile.java for javadocs
     public Page readPage(PageId pid) {
         // some code goes here
+        return readPage(pid, ByteBuffer.wrap(HeapPage.createEmptyPageData(getPageSize())));
+    }
+
+    // see DbFile.java for javadocs
+    @Override
+    public Page readPage(PageId pid, ByteBuffer frame) {
+        if (frame == null || frame.capacity() != getPageSize()) {
+            // frames are sized for default pages
+            return readPage(pid);
+        }
         int tableid = pid.getTableId();
         int pgNo = pid.pageNumber();
-        Database.getBufferPool();
-        final int pageSize = BufferPool.getPageSize();
-        byte[] rawPgData = HeapPage.createEmptyPageData();
 
         // random access read from disk
         try {
-            FileInputStream in = new FileInputStream(dbFile);
-            in.skip((long) pgNo * pageSize);
-            in.read(rawPgData);
-            return new HeapPage(new HeapPageId(tableid, pgNo), rawPgData);
+            FileChannel fc = getChannel();
+            long offset = getPageOffset(pgNo);
+            if (pgNo < 0 || offset >= fc.size()) {
+                throw new IllegalArgumentException("HeapFile: readPage: page " + pgNo + " does not exist");
+            }
+            ByteBuffer buf = frame.duplicate();
+            buf.clear();
+            while (buf.hasRemaining()) {
+                if (fc.read(buf, offset + buf.position()) < 0) {
+                    break;
+                }
+            }
+            // a short last page is padded with zeroes, a reused frame still holds its previous page
+            while (buf.hasRemaining()) {
+                buf.put((byte) 0);
+            }
+            buf.clear();
+            return refreshFreeSpace(new HeapPage(new HeapPageId(tableid, pgNo), buf));
         } catch (IOException e) {
-            throw new IllegalArgumentException("HeapFile: readPage: file not found");
+            throw new IllegalArgumentException("HeapFile: readPage: " + e.getMessage());
         }
     }
 
     // see DbFile.java for javadocs
     @Override
-    public void writePage(Page page) {
+    public List<Page> readPages(List<PageId> pids, List<ByteBuffer> frames) {
+        final int pageSize = getPageSize();
+        List<Page> pages = new ArrayList<>(pids.size());
+        try {
+            int start = 0;
+            while (start < pids.size()) {
+                int end = start + 1;
+                while (end < pids.size() && pids.get(end).pageNumber() == pids.get(end - 1).pageNumber() + 1) {
+                    end++;
+                }
+                ByteBuffer[] bufs = new ByteBuffer[end - start];
+                for (int i = start; i < end; i++) {
+                    ByteBuffer frame = frames == null ? null : frames.get(i);
+                    bufs[i - start] = frame != null && frame.capacity() == pageSize
+                            ? frame : ByteBuffer.wrap(HeapPage.createEmptyPageData(pageSize));
+                    bufs[i - start].clear();
+                }
+                int first = pids.get(start).pageNumber();
+                if (first < 0 || getPageOffset(first + bufs.length - 1) >= getChannel().size()) {
+                    throw new IllegalArgumentException("HeapFile: readPages: pages " + first + " to "
+                            + (first + bufs.length - 1) + " do not all exist");
+                }
+                readRun(getPageOffset(first), bufs);
+                for (int i = start; i < end; i++) {
+                    ByteBuffer buf = bufs[i - start];
+                    // a short last page is padded with zeroes, a reused frame still holds its previous page
+                    while (buf.hasRemaining()) {
+                        buf.put((byte) 0);
+                    }
+                    buf.clear();
+                    PageId pid = pids.get(i);
+                    pages.add(refreshFreeSpace(new HeapPage(new HeapPageId(pid.getTableId(), pid.pageNumber()), buf)));
+                }
+                start = end;
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("HeapFile: readPages: " + e.getMessage());
+        }
+        return pages;
+    }
+
+    private HeapPage refreshFreeSpace(HeapPage page) {
+        freeSpace.refresh(page.getId().pageNumber(), page.getNumEmptySlots(), page.getNumSlots());
+        return page;
+    }
+
+    // see DbFile.java for javadocs
+    @Override
+    public Page decodePage(PageId pid, ByteBuffer data) throws IOException {
+        // 从压缩层取回的页和从磁盘读的一样，要更新空闲空间
+        return refreshFreeSpace(new HeapPage(new HeapPageId(pid.getTableId(), pid.pageNumber()), data));
+    }
+
+    // see DbFile.java for javadocs
+    @Override
+    public void writePage(Page page) throws IOException {
         // some code goes here
         // not necessary for lab1
+        long offset = getPageOffset(page.getId().pageNumber());
+        ByteBuffer buf = ByteBuffer.wrap(page.getPageData());
+        FileChannel fc = getChannel();
+        while (buf.hasRemaining()) {
+            fc.write(buf, offset + buf.position());
+        }
+        pageWritten(page.getId().pageNumber());
+    }
+
+    /**
+     * Writes the pages in runs of adjacent page numbers, each run with a
+     * single gathering write.
+     */
+    @Override
+    public void writePages(List<Page> pages) throws IOException {
+        final int pageSize = getPageSize();
+        int start = 0;
+        while (start < pages.size()) {
+            int end = start + 1;
+            while (end < pages.size()
+                    && pages.get(end).getId().pageNumber() == pages.get(end - 1).getId().pageNumber() + 1) {
+                end++;
+            }
+            ByteBuffer[] bufs = new ByteBuffer[end - start];
+            for (int i = start; i < end; i++) {
+                bufs[i - start] = ByteBuffer.wrap(pages.get(i).getPageData());
+            }
+            writeRun(getPageOffset(pages.get(start).getId().pageNumber()), bufs, (long) bufs.length * pageSize);
+            pageWritten(pages.get(end - 1).getId().pageNumber());
+            start = end;
+        }
+        flushFreeSpace();
+    }
+
+    /**
+     * Stores the free space map along with the pages, it is only a hint and
+     * failing to store it doesn't fail the write.
+     */
+    private void flushFreeSpace() {
+        try {
+            freeSpace.flush();
+        } catch (IOException e) {
+            Debug.log("HeapFile: failed to store the free space map %s: %s", freeSpace.getFile(), e.getMessage());
+        }
+    }
+
+    /**
+     * Gathering writes go to the channel's position, which positional reads
+     * and writes ignore, so only runs have to be serialized among each other.
+     */
+    private synchronized void writeRun(long offset, ByteBuffer[] bufs, long length) throws IOException {
+        FileChannel fc = getChannel();
+        fc.position(offset);
+        long written = 0;
+        while (written < length) {
+            written += fc.write(bufs);
+        }
+    }
+
+    /**
+     * Scattering reads use the channel's position like gathering writes, so
+     * they are serialized with them.
+     */
+    private synchronized void readRun(long offset, ByteBuffer[] bufs) throws IOException {
+        FileChannel fc = getChannel();
+        fc.position(offset);
+        while (bufs[bufs.length - 1].hasRemaining()) {
+            if (fc.read(bufs) < 0) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Closes the channel of the backing file. The file is reopened if it
+     * is accessed again.
+     */
+    @Override
+    public synchronized void close() {
+        flushFreeSpace();
+        if (extended) {
+            // the unused rest of the last extent is cut off
+            try {
+                if (physicalLength == dbFile.length() && physicalLength > getPageOffset(logicalPages)) {
+                    getChannel().truncate(getPageOffset(logicalPages));
+                }
+            } catch (IOException e) {
+                Debug.log("HeapFile: failed to cut off the extent of %s: %s", dbFile, e.getMessage());
+            }
+            extended = false;
+            physicalLength = -1;
+        }
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            channel = null;
+        }
     }
 
     /**
@@ -114,53 +502,166 @@ public class HeapFile implements DbFile {
      */
     public int numPages() {
         // some code goes here
-        int fileSizeinByte = (int) dbFile.length();
-        return fileSizeinByte / Database.getBufferPool().getPageSize();
+        if (dbFile.length() != physicalLength) {
+            syncLength();
+        }
+        return logicalPages;
     }
 
+    /**
+     * Counts the pages of the file again if its length changed other than
+     * by an extent of this HeapFile, e.g. by a write after the last page.
+     */
+    private synchronized void syncLength() {
+        long length = dbFile.length();
+        if (length != physicalLength) {
+            physicalLength = length;
+            logicalPages = (int) Math.max(0, (length - getPageOffset(0)) / getPageSize());
+        }
+    }
+
+    /**
+     * Counts the pages up to the specified one, which was just written, as
+     * pages of the file.
+     */
+    private synchronized void pageWritten(int pgNo) {
+        syncLength();
+        logicalPages = Math.max(logicalPages, pgNo + 1);
+    }
+
+    /**
+     * Adds the tuple to the first page with an empty slot according to the
+     * free space map, appending a page to the file if there is none.
+     */
     // see DbFile.java for javadocs
     @Override
-    public ArrayList<Page> insertTuple(TransactionId tid, Tuple t) {
+    public ArrayList<Page> insertTuple(TransactionId tid, Tuple t)
+            throws DbException, IOException, TransactionAbortedException {
         // some code goes here
-        return null;
         // not necessary for lab1
+        if (!tupleDesc.equals(t.getTupleDesc())) {
+            throw new DbException("HeapFile: tupledesc of the tuple doesn't match " + dbFile);
+        }
+        BufferPool bufferPool = Database.getBufferPool();
+        int pgNo;
+        while ((pgNo = freeSpace.findPage(numPages())) >= 0) {
+            HeapPageId pid = new HeapPageId(getId(), pgNo);
+            boolean locked = bufferPool.holdsLock(tid, pid);
+            HeapPage page = (HeapPage) bufferPool.getPage(tid, pid, Permissions.READ_WRITE);
+            if (page.getNumEmptySlots() > 0) {
+                return insertInto(page, t);
+            }
+            freeSpace.update(pgNo, 0, page.getNumSlots());
+            if (!locked) {
+                // 页面没有被修改，提前释放锁不会破坏两阶段锁的正确性
+                bufferPool.releasePage(tid, pid);
+            }
+        }
+        pgNo = appendEmptyPage();
+        HeapPage page = (HeapPage) bufferPool.getPage(tid, new HeapPageId(getId(), pgNo), Permissions.READ_WRITE);
+        return insertInto(page, t);
+    }
+
+    private ArrayList<Page> insertInto(HeapPage page, Tuple t) throws DbException {
+        page.insertTuple(t);
+        freeSpace.update(page.getId().pageNumber(), page.getNumEmptySlots(), page.getNumSlots());
+        ArrayList<Page> modified = new ArrayList<>();
+        modified.add(page);
+        return modified;
+    }
+
+    /**
+     * Adds an empty page after the last page of the file, taking it from
+     * the current extent or extending the file by a new one. Appending
+     * doesn't wait for the transaction to commit, an aborted insert leaves
+     * the empty page behind for the next one.
+     *
+     * @return the page number of the new page
+     */
+    private synchronized int appendEmptyPage() throws IOException {
+        int pgNo = numPages();
+        if (getPageOffset(pgNo + 1) > physicalLength) {
+            extend(pgNo);
+        }
+        logicalPages = pgNo + 1;
+        return pgNo;
+    }
+
+    /**
+     * Writes zeroed pages from the specified page on, as many as the file
+     * has pages, at least one and at most an extent.
+     */
+    private void extend(int pgNo) throws IOException {
+        int maxPages = Math.max(1, maxExtentBytes / getPageSize());
+        int extentPages = Math.max(1, Math.min(pgNo, maxPages));
+        ByteBuffer zeroes = ByteBuffer.allocate(extentPages * getPageSize());
+        FileChannel fc = getChannel();
+        long offset = getPageOffset(pgNo);
+        while (zeroes.hasRemaining()) {
+            fc.write(zeroes, offset + zeroes.position());
+        }
+        physicalLength = dbFile.length();
+        extended = true;
     }
 
     // see DbFile.java for javadocs
     @Override
-    public Page deleteTuple(TransactionId tid, Tuple t) {
+    public Page deleteTuple(TransactionId tid, Tuple t) throws DbException, TransactionAbortedException {
         // some code goes here
-        return null;
         // not necessary for lab1
+        RecordId rid = t.getRecordId();
+        if (rid == null || rid.getPageId().getTableId() != getId()) {
+            throw new DbException("HeapFile: tuple is not in " + dbFile);
+        }
+        int pgNo = rid.getPageId().pageNumber();
+        if (pgNo < 0 || pgNo >= numPages()) {
+            throw new DbException("HeapFile: page " + pgNo + " of " + dbFile + " does not exist");
+        }
+        HeapPage page = (HeapPage) Database.getBufferPool().getPage(tid, rid.getPageId(), Permissions.READ_WRITE);
+        page.deleteTuple(t);
+        freeSpace.update(pgNo, page.getNumEmptySlots(), page.getNumSlots());
+        return page;
     }
 
     private class HeapFileIterator implements DbFileIterator {
 
         private Integer pgCursor;
         private Iterator<Tuple> tupleIter;
+        // the page being drained stays pinned until the iterator moves past it
+        private Page pinned;
         private final TransactionId transactionId;
         private final int tableId;
-        private final int numPages;
+        // 迭代的页范围[firstPage, endPage)
+        private final int firstPage;
+        private final int endPage;
+        // scans of files larger than the pool recycle a small ring of frames
+        private final BufferAccessStrategy strategy;
+        private final ReadAhead readAhead;
 
-        public HeapFileIterator(TransactionId tid) {
+        public HeapFileIterator(TransactionId tid, int firstPage, int endPage) {
             this.pgCursor = null;
             this.tupleIter = null;
+            this.pinned = null;
             this.transactionId = tid;
             this.tableId = getId();
-            this.numPages = numPages();
+            this.firstPage = firstPage;
+            this.endPage = endPage;
+            this.strategy = Database.getBufferPool().getBulkReadStrategy(numPages());
+            this.readAhead = new ReadAhead(tableId, endPage, strategy);
         }
 
         @Override
         public void open() throws DbException, TransactionAbortedException {
-            pgCursor = 0;
-            tupleIter = getTupleIter(pgCursor);
+            pgCursor = firstPage;
+            readAhead.reset();
+            tupleIter = firstPage < endPage ? getTupleIter(pgCursor) : Collections.<Tuple>emptyIterator();
         }
 
         @Override
         public boolean hasNext() throws DbException, TransactionAbortedException {
-            // < numpage - 1
+            // < endPage - 1
             if (pgCursor != null) {
-                while (pgCursor < numPages - 1) {
+                while (pgCursor < endPage - 1) {
                     if (tupleIter.hasNext()) {
                         return true;
                     } else {
@@ -168,7 +669,11 @@ public class HeapFile implements DbFile {
                         tupleIter = getTupleIter(pgCursor);
                     }
                 }
-                return tupleIter.hasNext();
+                if (tupleIter.hasNext()) {
+                    return true;
+                }
+                unpin();
+                return false;
             } else {
                 return false;
             }
@@ -190,18 +695,28 @@ public class HeapFile implements DbFile {
 
         @Override
         public void close() {
+            unpin();
             pgCursor = null;
             tupleIter = null;
         }
 
+        private void unpin() {
+            if (pinned != null) {
+                Database.getBufferPool().unpinPage(pinned);
+                pinned = null;
+            }
+        }
+
         private Iterator<Tuple> getTupleIter(int pgNo)
                 throws TransactionAbortedException, DbException {
+            unpin();
             PageId pid = new HeapPageId(tableId, pgNo);
-            return ((HeapPage)
-                    Database
-                            .getBufferPool()
-                            .getPage(transactionId, pid, Permissions.READ_ONLY))
-                    .iterator();
+            readAhead.onAccess(pgNo);
+            HeapPage page = (HeapPage) Database
+                    .getBufferPool()
+                    .pinPage(transactionId, pid, Permissions.READ_ONLY, strategy);
+            pinned = page;
+            return page.iterator();
         }
     }
 
@@ -209,7 +724,24 @@ public class HeapFile implements DbFile {
     @Override
     public DbFileIterator iterator(TransactionId tid) {
         // some code goes here
-        return new HeapFileIterator(tid);
+        return new HeapFileIterator(tid, 0, numPages());
+    }
+
+    /**
+     * Returns an iterator over the tuples of the specified pages, e.g. a
+     * partition of a parallel scan. Iterators over distinct pages may be
+     * used by several threads of the same transaction at once.
+     *
+     * @param fromPage the first page, inclusive
+     * @param toPage the last page, exclusive
+     * @throws IllegalArgumentException if the range is not within the file
+     */
+    public DbFileIterator iterator(TransactionId tid, int fromPage, int toPage) {
+        if (fromPage < 0 || toPage < fromPage || toPage > numPages()) {
+            throw new IllegalArgumentException("HeapFile: pages " + fromPage + " to " + toPage
+                    + " are not within the " + numPages() + " pages of " + dbFile);
+        }
+        return new HeapFileIterator(tid, fromPage, toPage);
     }
 
 }
@@ -1,18 +1,23 @@
 package simpledb.model.dbfile;
 
 import simpledb.enums.Type;
+import simpledb.model.TupleDesc;
 import simpledb.model.page.HeapPage;
+import simpledb.util.BufferPool;
 import simpledb.util.Utility;
 
 import java.io.*;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
  * HeapFileEncoder reads a comma delimited text file or accepts
  * an array of tuples and converts it to
  * pages of binary data in the appropriate format for simpledb heap pages
  * Pages are padded out to a specified length, and written consecutive in a
- * data file.
+ * data file. A page length other than the default page size is recorded in
+ * a file header, see {@link HeapFile}.
  */
 
 public class HeapFileEncoder {
@@ -30,30 +35,23 @@ public class HeapFileEncoder {
    * @param outFile The output file to write data to
    * @param npagebytes The number of bytes per page in the output file
    * @param numFields the number of fields in each input tuple
-   * @throws IOException if the temporary/output file can't be opened
+   * @throws IOException if the output file can't be written
    */
   public static void convert(ArrayList<ArrayList<Integer>> tuples, File outFile, int npagebytes, int numFields) throws IOException {
-      File tempInput = File.createTempFile("tempTable", ".txt");
-      System.out.println(tempInput.getAbsolutePath());
-      tempInput.deleteOnExit();
-      BufferedWriter bw = new BufferedWriter(new FileWriter(tempInput));
-      for (ArrayList<Integer> tuple : tuples) {
-          int writtenFields = 0;
-          for (Integer field : tuple) {
-              writtenFields++;
-              if (writtenFields > numFields) {
+      // 直接构造页面写入文件，不再经过临时文本文件
+      try (BulkLoader loader = new BulkLoader(outFile, new TupleDesc(Utility.getTypes(numFields)), npagebytes, 1)) {
+          for (ArrayList<Integer> tuple : tuples) {
+              if (tuple.size() > numFields) {
                   throw new RuntimeException("Tuple has more than " + numFields + " fields: (" +
                           Utility.listToString(tuple) + ")");
               }
-              bw.write(String.valueOf(field));
-              if (writtenFields < numFields) {
-                  bw.write(',');
+              int[] row = new int[numFields];
+              for (int i = 0; i < tuple.size(); i++) {
+                  row[i] = tuple.get(i);
               }
+              loader.addRow(row);
           }
-          bw.write('\n');
       }
-      bw.close();
-      convert(tempInput, outFile, npagebytes, numFields);
   }
 
   public static void convert(File inFile, File outFile, int npagebytes, int numFields) throws IOException {
@@ -68,6 +66,27 @@ public class HeapFileEncoder {
       convert(inFile,outFile,npagebytes,numFields,typeAr,',');
   }
 
+   /**
+    * Convert the specified input text file into a binary page file using
+    * the specified number of threads. With more than one thread the input is
+    * memory mapped, split into chunks at line ends and the chunks are parsed
+    * in parallel; only the last page of each chunk may have empty slots.
+    *
+    * @param threads the number of threads parsing the input, 1 to parse it
+    *     as {@link #convert(File, File, int, int, Type[], char)} does
+    * @throws IOException if the input/output file can't be opened or a malformed input line is encountered
+    */
+  public static void convert(File inFile, File outFile, int npagebytes, int numFields, Type[] typeAr,
+                             char fieldSeparator, int threads) throws IOException {
+      if (threads <= 1) {
+          convert(inFile, outFile, npagebytes, numFields, typeAr, fieldSeparator);
+          return;
+      }
+      new ParallelCsvEncoder(Arrays.copyOf(typeAr, numFields), npagebytes, fieldSeparator, threads)
+              .convert(inFile, outFile);
+      Files.deleteIfExists(FreeSpaceMap.sidecarFile(outFile).toPath());
+  }
+
    /**
     * Convert the specified input text file into a binary page file. <br>
     * Assume format of the input file is (note that only integer fields are supported):<br>
@@ -110,6 +129,9 @@ public class HeapFileEncoder {
 
       BufferedReader br = new BufferedReader(new FileReader(inFile));
       FileOutputStream os = new FileOutputStream(outFile);
+      if (npagebytes != BufferPool.getPageSize()) {
+          os.write(HeapFile.createHeader(npagebytes));
+      }
 
       // our numbers probably won't be much larger than 1024 digits
       char buf[] = new char[1024];
@@ -243,6 +265,8 @@ public class HeapFileEncoder {
     }
     br.close();
     os.close();
+    // the free space map of the table the file held before doesn't describe the new pages
+    Files.deleteIfExists(FreeSpaceMap.sidecarFile(outFile).toPath());
   }
 
     public static void main(String[] args) {
@@ -0,0 +1,143 @@
+package simpledb.model.dbfile;
+
+import simpledb.model.TupleDesc;
+import simpledb.model.page.HeapPage;
+import simpledb.model.page.Page;
+import simpledb.model.pageid.HeapPageId;
+import simpledb.model.pageid.PageId;
+import simpledb.util.BufferPool;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * MappedHeapFile is a HeapFile whose pages are read from a memory mapping of
+ * the backing file instead of being copied into a fresh byte array per read.
+ * It is meant for read-mostly tables; the file format is exactly the one of
+ * HeapFile.
+ * <p>
+ * The file is mapped read only in segments of {@link #SEGMENT_SIZE} bytes so
+ * that large files don't need one huge contiguous mapping. Pages are written
+ * through the file channel as in HeapFile, the shared mapping observes those
+ * writes. When a page past the mapped length is requested the tail of the
+ * file is mapped again, so the file may grow while it is in use.
+ *
+ * @see HeapFile
+ */
+public class MappedHeapFile extends HeapFile {
+
+    /** Bytes per mapped segment, a multiple of the page size. */
+    public static final long SEGMENT_SIZE = 64L * 1024 * 1024;
+
+    private final ArrayList<MappedByteBuffer> segments;
+    private long mappedLength;
+
+    /**
+     * Constructs a memory mapped heap file backed by the specified file.
+     *
+     * @param f
+     *            the file that stores the on-disk backing store for this heap
+     *            file.
+     */
+    public MappedHeapFile(File f, TupleDesc td) {
+        super(f, td);
+        this.segments = new ArrayList<>();
+        this.mappedLength = 0;
+    }
+
+    /**
+     * Makes sure the file is mapped up to the required length, or up to its
+     * end if it is shorter. Maps the part of the file past mappedLength,
+     * remapping the last segment if it was only partially mapped.
+     *
+     * @return the mapped length of the file
+     */
+    private synchronized long remap(long required) throws IOException {
+        if (required <= mappedLength) {
+            return mappedLength;
+        }
+        FileChannel fc = getChannel();
+        long size = fc.size();
+        if (size <= mappedLength) {
+            return mappedLength;
+        }
+        int first = (int) (mappedLength / SEGMENT_SIZE);
+        while (segments.size() > first) {
+            // 最后一个段没有映射满，文件增长后重新映射
+            segments.remove(segments.size() - 1);
+        }
+        for (long start = first * SEGMENT_SIZE; start < size; start += SEGMENT_SIZE) {
+            long length = Math.min(SEGMENT_SIZE, size - start);
+            segments.add(fc.map(FileChannel.MapMode.READ_ONLY, start, length));
+        }
+        mappedLength = size;
+        return mappedLength;
+    }
+
+    private synchronized MappedByteBuffer getSegment(int index) {
+        return segments.get(index);
+    }
+
+    // see DbFile.java for javadocs
+    @Override
+    public Page readPage(PageId pid) {
+        final int pageSize = getPageSize();
+        long offset = getPageOffset(pid.pageNumber());
+        try {
+            if (pid.pageNumber() < 0 || offset >= remap(offset + pageSize)) {
+                throw new IllegalArgumentException("MappedHeapFile: readPage: page " + pid.pageNumber() + " does not exist");
+            }
+            ByteBuffer page = getSegment((int) (offset / SEGMENT_SIZE)).duplicate();
+            int start = (int) (offset % SEGMENT_SIZE);
+            if (start + pageSize > page.limit()) {
+                // a short last page is padded with zeroes
+                byte[] rawPgData = HeapPage.createEmptyPageData(pageSize);
+                page.position(start);
+                page.get(rawPgData, 0, page.remaining());
+                return new HeapPage(new HeapPageId(pid.getTableId(), pid.pageNumber()), rawPgData);
+            }
+            page.position(start);
+            page.limit(start + pageSize);
+            return new HeapPage(new HeapPageId(pid.getTableId(), pid.pageNumber()), page.slice());
+        } catch (IOException e) {
+            throw new IllegalArgumentException("MappedHeapFile: readPage: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Pages are read from the mapping, which lies outside of the Java heap
+     * already, so the frame is not used.
+     */
+    @Override
+    public Page readPage(PageId pid, ByteBuffer frame) {
+        return readPage(pid);
+    }
+
+    /**
+     * Mapped pages need no read requests, so there is nothing to batch.
+     */
+    @Override
+    public List<Page> readPages(List<PageId> pids, List<ByteBuffer> frames) {
+        List<Page> pages = new ArrayList<>(pids.size());
+        for (PageId pid : pids) {
+            pages.add(readPage(pid));
+        }
+        return pages;
+    }
+
+    /**
+     * Drops the mappings and closes the channel of the backing file. The file
+     * is mapped again if it is accessed again.
+     */
+    @Override
+    public synchronized void close() {
+        segments.clear();
+        mappedLength = 0;
+        super.close();
+    }
+}
@@ -0,0 +1,271 @@
+package simpledb.model.dbfile;
+
+import simpledb.enums.Type;
+import simpledb.model.field.StringField;
+import simpledb.util.BufferPool;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ParallelCsvEncoder is the parallel mode of {@link HeapFileEncoder}: the
+ * input is memory mapped in chunks split at line ends, the chunks are parsed
+ * into page images on a pool of threads, and the pages are written in input
+ * order.
+ * <p>
+ * The lines are parsed as HeapFileEncoder parses them. The pages of a chunk
+ * are filled one after the other, so only the last page of each chunk may
+ * have empty slots; an input of a single chunk gives the same file as the
+ * sequential encoder. A field that isn't a number is reported and stored as
+ * 0, a missing field is stored as 0 or as the empty string.
+ */
+class ParallelCsvEncoder {
+
+    /** The size of the chunks the input is split into, rounded up to a line end. */
+    static final int CHUNK_BYTES = 8 << 20;
+
+    private static final AtomicInteger THREAD_IDS = new AtomicInteger();
+
+    private final Type[] types;
+    private final int[] fieldOffsets;
+    private final int pageSize;
+    private final int tupleSize;
+    private final int numSlots;
+    private final int headerBytes;
+    private final char fieldSeparator;
+    private final int threads;
+
+    ParallelCsvEncoder(Type[] types, int pageSize, char fieldSeparator, int threads) {
+        this.types = types.clone();
+        this.fieldOffsets = new int[types.length];
+        int size = 0;
+        for (int i = 0; i < types.length; i++) {
+            fieldOffsets[i] = size;
+            size += types[i].getLen();
+        }
+        this.pageSize = pageSize;
+        this.tupleSize = size;
+        this.numSlots = (pageSize * 8) / (tupleSize * 8 + 1);
+        if (numSlots == 0) {
+            throw new IllegalArgumentException("HeapFileEncoder: a page of " + pageSize + " bytes can't hold a tuple");
+        }
+        this.headerBytes = (numSlots + 7) / 8;
+        this.fieldSeparator = fieldSeparator;
+        this.threads = threads;
+    }
+
+    void convert(File inFile, File outFile) throws IOException {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 1, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+            Thread t = new Thread(r, "HeapFileEncoder-" + THREAD_IDS.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        try (FileChannel in = FileChannel.open(inFile.toPath(), StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(outFile.toPath(), StandardOpenOption.CREATE,
+                     StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            if (pageSize != BufferPool.getPageSize()) {
+                write(out, ByteBuffer.wrap(HeapFile.createHeader(pageSize)));
+            }
+            long size = in.size();
+            long start = 0;
+            long pages = 0;
+            // 最多2*threads个块在解析或等待写出，限制内存占用
+            ArrayDeque<Future<ByteBuffer>> pending = new ArrayDeque<>();
+            while (start < size || !pending.isEmpty()) {
+                while (start < size && pending.size() < 2 * threads) {
+                    long end = chunkEnd(in, start, size);
+                    ByteBuffer chunk = in.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+                    pending.add(pool.submit(() -> encodeChunk(chunk)));
+                    start = end;
+                }
+                ByteBuffer chunkPages = await(pending.poll());
+                pages += chunkPages.remaining() / pageSize;
+                write(out, chunkPages);
+            }
+            if (pages == 0) {
+                // an empty table still has an empty page
+                write(out, ByteBuffer.allocate(pageSize));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static ByteBuffer await(Future<ByteBuffer> chunk) throws IOException {
+        try {
+            return chunk.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("HeapFileEncoder: interrupted while encoding");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException("HeapFileEncoder: failed to encode a chunk", e.getCause());
+        }
+    }
+
+    private static void write(FileChannel out, ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) {
+            out.write(buf);
+        }
+    }
+
+    /**
+     * @return the offset after the first line end at least CHUNK_BYTES
+     *     after start, or the size of the input if there is none
+     */
+    private static long chunkEnd(FileChannel in, long start, long size) throws IOException {
+        long pos = start + CHUNK_BYTES;
+        ByteBuffer buf = ByteBuffer.allocate(64 << 10);
+        while (pos < size) {
+            buf.clear();
+            int n = in.read(buf, pos);
+            if (n < 0) {
+                break;
+            }
+            for (int i = 0; i < n; i++) {
+                if (buf.get(i) == '\n') {
+                    return pos + i + 1;
+                }
+            }
+            pos += n;
+        }
+        return size;
+    }
+
+    /**
+     * Parses the lines of a chunk into pages.
+     *
+     * @return the pages, between position 0 and the limit
+     */
+    private ByteBuffer encodeChunk(ByteBuffer chunk) throws IOException {
+        int n = chunk.remaining();
+        ByteBuffer pages = ByteBuffer.allocate(Math.max(pageSize, (n / pageSize + 1) * pageSize));
+        int numPages = 0;
+        int slot = numSlots;
+        int fieldNo = 0;
+        int fieldStart = 0;
+        // 当前行是否出现过'\r'以外的字符，空行被忽略
+        boolean lineStarted = false;
+        for (int i = 0; i <= n; i++) {
+            // the last line may lack its line end
+            byte c = i < n ? chunk.get(i) : (byte) '\n';
+            if (c == '\r') {
+                continue;
+            }
+            if (c != '\n' && c != fieldSeparator) {
+                lineStarted = true;
+                continue;
+            }
+            if (c == '\n' && !lineStarted) {
+                fieldStart = i + 1;
+                continue;
+            }
+            lineStarted = true;
+            if (fieldNo == 0) {
+                // 新记录，当前页满了就开始新的一页
+                if (slot == numSlots) {
+                    if ((numPages + 1) * pageSize > pages.capacity()) {
+                        ByteBuffer grown = ByteBuffer.allocate(pages.capacity() * 2);
+                        grown.put(pages.array(), 0, numPages * pageSize);
+                        pages = grown;
+                    }
+                    numPages++;
+                    slot = 0;
+                }
+            }
+            if (fieldNo >= types.length) {
+                throw new IOException("HeapFileEncoder: a line has more than " + types.length + " fields");
+            }
+            int offset = (numPages - 1) * pageSize + headerBytes + slot * tupleSize + fieldOffsets[fieldNo];
+            writeField(pages, offset, types[fieldNo], chunk, fieldStart, i);
+            fieldStart = i + 1;
+            if (c == '\n') {
+                int header = (numPages - 1) * pageSize + slot / 8;
+                pages.put(header, (byte) (pages.get(header) | (1 << (slot % 8))));
+                slot++;
+                fieldNo = 0;
+                lineStarted = false;
+            } else {
+                fieldNo++;
+            }
+        }
+        pages.position(0);
+        pages.limit(numPages * pageSize);
+        return pages;
+    }
+
+    /**
+     * Parses the field in bytes [from, to) of the chunk and writes it to
+     * the pages at the specified offset.
+     */
+    private static void writeField(ByteBuffer pages, int offset, Type type, ByteBuffer chunk, int from, int to) {
+        if (type == Type.INT_TYPE) {
+            int value;
+            try {
+                value = parseInt(chunk, from, to);
+            } catch (NumberFormatException e) {
+                System.out.println("BAD LINE : " + text(chunk, from, to));
+                value = 0;
+            }
+            pages.putInt(offset, value);
+        } else {
+            type.write(pages, offset, new StringField(text(chunk, from, to).trim(), Type.STRING_LEN));
+        }
+    }
+
+    /**
+     * Parses an int without creating a String, falling back to
+     * Integer.parseInt for anything but optional blanks, an optional
+     * minus sign and up to nine digits.
+     */
+    private static int parseInt(ByteBuffer chunk, int from, int to) {
+        int start = from;
+        int end = to;
+        while (start < end && (chunk.get(start) & 0xff) <= ' ') {
+            start++;
+        }
+        while (end > start && (chunk.get(end - 1) & 0xff) <= ' ') {
+            end--;
+        }
+        boolean negative = start < end && chunk.get(start) == '-';
+        int digits = negative ? start + 1 : start;
+        if (digits == end || end - digits > 9) {
+            return Integer.parseInt(text(chunk, from, to).trim());
+        }
+        int value = 0;
+        for (int i = digits; i < end; i++) {
+            int d = chunk.get(i) - '0';
+            if (d < 0 || d > 9) {
+                return Integer.parseInt(text(chunk, from, to).trim());
+            }
+            value = value * 10 + d;
+        }
+        return negative ? -value : value;
+    }
+
+    private static String text(ByteBuffer chunk, int from, int to) {
+        byte[] bytes = new byte[to - from];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = chunk.get(from + i);
+        }
+        // FileReader of the sequential encoder decodes with the default charset
+        return new String(bytes, Charset.defaultCharset());
+    }
+}
@@ -1,5 +1,6 @@
 package simpledb.model.page;
 
+import simpledb.enums.Type;
 import simpledb.model.*;
 import simpledb.model.dbfile.HeapFile;
 import simpledb.model.field.Field;
@@ -8,7 +9,7 @@ import simpledb.util.BufferPool;
 import simpledb.exception.DbException;
 
 import java.io.*;
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 
@@ -27,16 +28,24 @@ public class HeapPage implements Page {
     final byte header[];
     final Tuple tuples[];
     final int numSlots;
+    final int tupleSize;
+    final int pageSize;
+    // 页面的原始字节，元组在第一次被访问时才从这里解码
+    // 可能是BufferPool堆外frame的缓冲区，frame被重用前由detach拷贝到堆内
+    volatile ByteBuffer data;
 
+    // 前像，为null时前像就是尚未被修改过的data，只有页面第一次被弄脏时才拷贝
     byte[] oldData;
     private final Byte oldDataLock=new Byte((byte)0);
+    private volatile TransactionId dirtier;
 
     /**
      * Create a HeapPage from a set of bytes of data read from disk.
      * The format of a HeapPage is a set of header bytes indicating
      * the slots of the page that are in use, some number of tuple slots.
+     * The page size is the length of data.
      *  Specifically, the number of tuples is equal to: <p>
-     *          floor((BufferPool.getPageSize()*8) / (tuple size * 8 + 1))
+     *          floor((page size*8) / (tuple size * 8 + 1))
      * <p> where tuple size is the size of tuples in this
      * database table, which can be determined via {@link Catalog#getTupleDesc}.
      * The number of 8-bit header words is equal to:
@@ -48,28 +57,40 @@ public class HeapPage implements Page {
      * @see BufferPool#getPageSize()
      */
     public HeapPage(HeapPageId id, byte[] data) throws IOException {
+        this(id, ByteBuffer.wrap(data));
+    }
+
+    /**
+     * Create a HeapPage over the bytes between the position and the limit of
+     * the specified buffer, e.g. a slice of a memory mapped file. The buffer
+     * is not copied: only the header is read up front, tuples and fields are
+     * decoded from the buffer on first access. The buffer content must
+     * therefore not be modified while the page is in use; its position is
+     * not modified.
+     *
+     * @see #HeapPage(HeapPageId, byte[])
+     */
+    public HeapPage(HeapPageId id, ByteBuffer data) throws IOException {
         this.pid = id;
         this.td = Database.getCatalog().getTupleDesc(id.getTableId());
+        this.data = data.slice();
+        this.pageSize = this.data.remaining();
+        this.tupleSize = td.getSize();
         this.numSlots = getNumTuples();
-        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
+        if (numSlots == 0) {
+            throw new IOException("HeapPage: a page of " + pageSize + " bytes can't hold a tuple");
+        }
 
         // allocate and read the header slots of this page
         header = new byte[getHeaderSize()];
         for (int i=0; i<header.length; i++) {
-            header[i] = dis.readByte();
+            header[i] = this.data.get(i);
         }
         tuples = new Tuple[numSlots];
-        try{
-            // allocate and read the actual records of this page
-            for (int i=0; i<tuples.length; i++){
-                tuples[i] = readNextTuple(dis,i);
-            }
-        }catch(NoSuchElementException e){
-            e.printStackTrace();
-        }
-        dis.close();
 
-        setBeforeImage();
+        // the before image is the read buffer itself until the page is dirtied
+        oldData = null;
+        dirtier = null;
     }
 
     /**
@@ -77,10 +98,10 @@ public class HeapPage implements Page {
      * @return the number of tuples on this page
      */
     private int getNumTuples() {        
-        // BufferPool.getPageSize() * 8 => 每个HeapPage的字节数 * 8 => 每个HeapPage的字节数bit数（1Byte字节=8bit）
+        // pageSize * 8 => 每个HeapPage的字节数 * 8 => 每个HeapPage的字节数bit数（1Byte字节=8bit）
         // td.getSize() * 8 + 1 => 每一个tuple的字节数 * 8 + 1(每个tuple占HeapPage header位图的1bit位)
         // return返回值：HeapPage一页能容纳的tuple最大数量（slot插槽数）
-        return (BufferPool.getPageSize() * 8) / (td.getSize() * 8 + 1);
+        return (pageSize * 8) / (td.getSize() * 8 + 1);
     }
 
     /**
@@ -97,6 +118,9 @@ public class HeapPage implements Page {
     /**
      * Return a view of this page before it was modified
      * -- used by recovery
+     * <p>
+     * A page that was never dirtied shares its read buffer with its before
+     * image; the buffer is only copied when the page is first marked dirty.
      */
     @Override
     public HeapPage getBeforeImage(){
@@ -106,6 +130,18 @@ public class HeapPage implements Page {
             {
                 oldDataRef = oldData;
             }
+            if (oldDataRef == null) {
+                byte[] copy = null;
+                ByteBuffer raw;
+                synchronized (this) {
+                    raw = data;
+                    // a direct buffer is a frame or a mapping that may change under the before image
+                    if (raw.isDirect()) {
+                        copy = copyData(raw);
+                    }
+                }
+                return copy != null ? new HeapPage(pid, copy) : new HeapPage(pid, raw.duplicate());
+            }
             return new HeapPage(pid,oldDataRef);
         } catch (IOException e) {
             e.printStackTrace();
@@ -117,8 +153,40 @@ public class HeapPage implements Page {
 
     @Override
     public void setBeforeImage() {
+        // getPageData already returns a fresh array
+        byte[] pageData = getPageData();
+        synchronized(oldDataLock) {
+            oldData = pageData;
+        }
+    }
+
+    /**
+     * Copy the read buffer into oldData, unless a before image was already
+     * captured. The read buffer itself is never modified by HeapPage, but it
+     * may be a mapping of the file that changes once this page is flushed.
+     */
+    private void captureBeforeImage() {
         synchronized(oldDataLock) {
-            oldData = getPageData().clone();
+            if (oldData == null) {
+                oldData = copyData(data);
+            }
+        }
+    }
+
+    private static byte[] copyData(ByteBuffer raw) {
+        byte[] copy = new byte[raw.remaining()];
+        raw.duplicate().get(copy);
+        return copy;
+    }
+
+    /**
+     * Copies the page data out of the buffer it was read into, if that is
+     * a direct buffer, e.g. an off-heap BufferPool frame about to be reused.
+     */
+    @Override
+    public synchronized void detach() {
+        if (data.isDirect()) {
+            data = ByteBuffer.wrap(copyData(data));
         }
     }
 
@@ -131,39 +199,67 @@ public class HeapPage implements Page {
     }
 
     /**
-     * Suck up tuples from the source file.
+     * @return the offset of the specified slot in the page data
      */
-    private Tuple readNextTuple(DataInputStream dis, int slotId) throws NoSuchElementException {
-        // if associated bit is not set, read forward to the next tuple, and
-        // return null.
+    private int getSlotOffset(int slotId) {
+        return header.length + slotId * tupleSize;
+    }
+
+    /**
+     * Returns the tuple in the specified slot, decoding it from the page
+     * data on first access.
+     *
+     * @return the tuple, or null if the slot is empty
+     */
+    private synchronized Tuple getTuple(int slotId) {
         if (!isSlotUsed(slotId)) {
-            for (int i=0; i<td.getSize(); i++) {
-                try {
-                    dis.readByte();
-                } catch (IOException e) {
-                    throw new NoSuchElementException("error reading empty tuple");
-                }
-            }
             return null;
         }
+        if (tuples[slotId] == null) {
+            tuples[slotId] = readTuple(slotId);
+        }
+        return tuples[slotId];
+    }
 
-        // read fields in the tuple
+    /**
+     * Decode the tuple in the specified slot from the page data.
+     */
+    private Tuple readTuple(int slotId) {
         Tuple t = new Tuple(td);
         RecordId rid = new RecordId(pid, slotId);
         t.setRecordId(rid);
-        try {
-            for (int j=0; j<td.numFields(); j++) {
-                Field f = td.getFieldType(j).parse(dis);
-                t.setField(j, f);
-            }
-        } catch (java.text.ParseException e) {
-            e.printStackTrace();
-            throw new NoSuchElementException("parsing error!");
+        int offset = getSlotOffset(slotId);
+        for (int j=0; j<td.numFields(); j++) {
+            Type type = td.getFieldType(j);
+            t.setField(j, type.parse(data, offset));
+            offset += type.getLen();
         }
-
         return t;
     }
 
+    /**
+     * Returns the specified field of the tuple in the specified slot. Unless
+     * the tuple was already materialized, only this field is decoded from
+     * the page data and no Tuple is created.
+     *
+     * @param slotId the slot of the tuple
+     * @param fieldIndex the index of the field in the TupleDesc of this page
+     * @throws NoSuchElementException if the slot is empty
+     */
+    public Field getField(int slotId, int fieldIndex) throws NoSuchElementException {
+        if (!isSlotUsed(slotId)) {
+            throw new NoSuchElementException("HeapPage: slot " + slotId + " is empty");
+        }
+        synchronized (this) {
+            if (tuples[slotId] != null) {
+                return tuples[slotId].getField(fieldIndex);
+            }
+            // parsed under the monitor of detach, so the frame can't be reused meanwhile
+            int offset = getSlotOffset(slotId) + td.getFieldOffset(fieldIndex);
+            return td.getFieldType(fieldIndex).parse(data, offset);
+        }
+    }
+
     /**
      * Generates a byte array representing the contents of this page.
      * Used to serialize this page to disk.
@@ -176,65 +272,43 @@ public class HeapPage implements Page {
      * @return A byte array correspond to the bytes of this page.
      */
     @Override
-    public byte[] getPageData() {
-        int len = BufferPool.getPageSize();
-        ByteArrayOutputStream baos = new ByteArrayOutputStream(len);
+    public synchronized byte[] getPageData() {
+        byte[] pageData = new byte[pageSize];
+        ByteBuffer raw = data.duplicate();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(tupleSize);
         DataOutputStream dos = new DataOutputStream(baos);
 
         // create the header of the page
-        for (byte b : header) {
-            try {
-                dos.writeByte(b);
-            } catch (IOException e) {
-                // this really shouldn't happen
-                e.printStackTrace();
-            }
-        }
-
-        // create the tuples
-        for (int i=0; i<tuples.length; i++) {
+        System.arraycopy(header, 0, pageData, 0, header.length);
 
-            // empty slot
+        // create the tuples, empty slots and the padding stay zero
+        for (int i=0; i<numSlots; i++) {
             if (!isSlotUsed(i)) {
-                for (int j=0; j<td.getSize(); j++) {
-                    try {
-                        dos.writeByte(0);
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    }
+                continue;
+            }
+            int offset = getSlotOffset(i);
 
-                }
+            // tuples that were never decoded are copied as they are
+            if (tuples[i] == null) {
+                raw.position(offset);
+                raw.get(pageData, offset, tupleSize);
                 continue;
             }
 
-            // non-empty slot
+            baos.reset();
             for (int j=0; j<td.numFields(); j++) {
                 Field f = tuples[i].getField(j);
                 try {
                     f.serialize(dos);
-                
                 } catch (IOException e) {
+                    // this really shouldn't happen
                     e.printStackTrace();
                 }
             }
+            System.arraycopy(baos.toByteArray(), 0, pageData, offset, tupleSize);
         }
 
-        // padding
-        int zerolen = BufferPool.getPageSize() - (header.length + td.getSize() * tuples.length); //- numSlots * td.getSize();
-        byte[] zeroes = new byte[zerolen];
-        try {
-            dos.write(zeroes, 0, zerolen);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-
-        try {
-            dos.flush();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-
-        return baos.toByteArray();
+        return pageData;
     }
 
     /**
@@ -247,8 +321,15 @@ public class HeapPage implements Page {
      * @return The returned ByteArray.
      */
     public static byte[] createEmptyPageData() {
-        int len = BufferPool.getPageSize();
-        return new byte[len]; //all 0
+        return createEmptyPageData(BufferPool.getPageSize());
+    }
+
+    /**
+     * @return the data of an empty HeapPage of the specified page size
+     * @see #createEmptyPageData()
+     */
+    public static byte[] createEmptyPageData(int pageSize) {
+        return new byte[pageSize]; //all 0
     }
 
     /**
@@ -258,9 +339,20 @@ public class HeapPage implements Page {
      *         already empty.
      * @param t The tuple to delete
      */
-    public void deleteTuple(Tuple t) throws DbException {
+    public synchronized void deleteTuple(Tuple t) throws DbException {
         // some code goes here
         // not necessary for lab1
+        RecordId rid = t.getRecordId();
+        if (rid == null || !pid.equals(rid.getPageId())) {
+            throw new DbException("HeapPage: tuple is not on page " + pid);
+        }
+        int slotId = rid.tupleno();
+        if (slotId < 0 || !isSlotUsed(slotId)) {
+            throw new DbException("HeapPage: slot " + slotId + " of page " + pid + " is already empty");
+        }
+        markSlotUsed(slotId, false);
+        tuples[slotId] = null;
+        t.setRecordId(null);
     }
 
     /**
@@ -270,9 +362,33 @@ public class HeapPage implements Page {
      *         is mismatch.
      * @param t The tuple to add.
      */
-    public void insertTuple(Tuple t) throws DbException {
+    public synchronized void insertTuple(Tuple t) throws DbException {
         // some code goes here
         // not necessary for lab1
+        if (!td.equals(t.getTupleDesc())) {
+            throw new DbException("HeapPage: tupledesc of the tuple doesn't match page " + pid);
+        }
+        int slotId = firstEmptySlot();
+        if (slotId < 0) {
+            throw new DbException("HeapPage: page " + pid + " is full");
+        }
+        markSlotUsed(slotId, true);
+        // 新元组只保存在tuples中，data保持读入时的内容，getPageData时才序列化
+        tuples[slotId] = t;
+        t.setRecordId(new RecordId(pid, slotId));
+    }
+
+    /**
+     * @return the lowest empty slot, or -1 if the page is full
+     */
+    private int firstEmptySlot() {
+        for (int i = 0; i < header.length; i++) {
+            int free = ~header[i] & headerByteMask(i);
+            if (free != 0) {
+                return i * 8 + Integer.numberOfTrailingZeros(free);
+            }
+        }
+        return -1;
     }
 
     /**
@@ -283,6 +399,12 @@ public class HeapPage implements Page {
     public void markDirty(boolean dirty, TransactionId tid) {
         // some code goes here
 	// not necessary for lab1
+        if (dirty) {
+            captureBeforeImage();
+            dirtier = tid;
+        } else {
+            dirtier = null;
+        }
     }
 
     /**
@@ -292,7 +414,14 @@ public class HeapPage implements Page {
     public TransactionId isDirty() {
         // some code goes here
 	// Not necessary for lab1
-        return null;      
+        return dirtier;
+    }
+
+    /**
+     * Returns the number of slots on this page, used or not.
+     */
+    public int getNumSlots() {
+        return numSlots;
     }
 
     /**
@@ -300,13 +429,34 @@ public class HeapPage implements Page {
      */
     public int getNumEmptySlots() {
         // some code goes here
-        int numEmptSlot = 0;
-        for (int i = 0; i < numSlots; i++) {
-            if (!isSlotUsed(i)) {
-                numEmptSlot += 1;
-            }
+        int numUsedSlot = 0;
+        for (int i = 0; i < header.length; i++) {
+            numUsedSlot += Integer.bitCount(header[i] & headerByteMask(i));
+        }
+        return numSlots - numUsedSlot;
+    }
+
+    /**
+     * @return a mask of the bits of the specified header byte that belong
+     *     to existing slots (the last byte may have unused high bits)
+     */
+    private int headerByteMask(int hdNo) {
+        int bits = numSlots - hdNo * 8;
+        return bits >= 8 ? 0xff : (1 << bits) - 1;
+    }
+
+    /**
+     * Returns 64 consecutive bits of the header as a long: bit j of header
+     * word w tells whether slot w * 64 + j is used.
+     */
+    private long getHeaderWord(int w) {
+        long word = 0;
+        int first = w * 8;
+        int last = Math.min(first + 8, header.length);
+        for (int i = first; i < last; i++) {
+            word |= (long) (header[i] & headerByteMask(i)) << ((i - first) * 8);
         }
-        return numEmptSlot;
+        return word;
     }
 
     /**
@@ -336,18 +486,34 @@ public class HeapPage implements Page {
     private void markSlotUsed(int i, boolean value) {
         // some code goes here
         // not necessary for lab1
+        int hdNo = i / 8;
+        int inByteIndex = 0x1 << (i % 8);
+        if (value) {
+            header[hdNo] |= inByteIndex;
+        } else {
+            header[hdNo] &= ~inByteIndex;
+        }
     }
 
+    /**
+     * Walks the header bitmap a 64 bit word at a time and jumps straight
+     * from one used slot to the next, without collecting the tuples first.
+     * A slot emptied after its word was read is skipped.
+     */
     protected class HeapPageTupleIterator implements Iterator<Tuple> {
-        private final Iterator<Tuple> iter;
+        // 下一个要读取的header字的下标
+        private int nextWord;
+        // 当前header字中尚未返回的已用slot对应的bit位
+        private long word;
+        // 当前header字第0位对应的slot下标
+        private int base;
+        // hasNext已经取出、尚未返回的tuple
+        private Tuple next;
+
         public HeapPageTupleIterator() {
-            ArrayList<Tuple> tupleArrayList = new ArrayList<Tuple>(tuples.length);
-            for (int i = 0; i < tuples.length; i++) {
-                if (isSlotUsed(i)) {
-                    tupleArrayList.add(i, tuples[i]);
-                }
-            }
-            iter = tupleArrayList.iterator();
+            this.nextWord = 0;
+            this.word = 0;
+            this.base = 0;
         }
 
         @Override
@@ -357,12 +523,31 @@ public class HeapPage implements Page {
 
         @Override
         public boolean hasNext() {
-            return iter.hasNext();
+            while (next == null) {
+                while (word == 0 && nextWord * 64 < numSlots) {
+                    base = nextWord * 64;
+                    word = getHeaderWord(nextWord++);
+                }
+                if (word == 0) {
+                    return false;
+                }
+                int slot = base + Long.numberOfTrailingZeros(word);
+                // 清除最低位的1
+                word &= word - 1;
+                // 读出header字之后slot可能已被删除，此时为null，继续找下一个
+                next = getTuple(slot);
+            }
+            return true;
         }
 
         @Override
         public Tuple next() {
-            return iter.next();
+            if (!hasNext()) {
+                throw new NoSuchElementException("HeapPageTupleIterator: no more tuples");
+            }
+            Tuple t = next;
+            next = null;
+            return t;
         }
     }
     /**
@@ -58,4 +58,12 @@ public interface Page {
      * copy current content to the before image.
      */
     void setBeforeImage();
+
+    /**
+     * The buffer this page was read into is about to be reused for another
+     * page; copy whatever is still needed out of it. Only pages that keep
+     * referencing the buffer they were read from have to do anything.
+     */
+    default void detach() {
+    }
 }
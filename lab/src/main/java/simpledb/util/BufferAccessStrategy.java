@@ -0,0 +1,59 @@
+package simpledb.util;
+
+import simpledb.model.pageid.PageId;
+
+/**
+ * BufferAccessStrategy is an access hint handed to
+ * {@link BufferPool#getPage(simpledb.model.TransactionId, PageId, simpledb.model.Permissions, BufferAccessStrategy)}
+ * by callers that know their access pattern.
+ * <p>
+ * The only strategy so far is the bulk read ring used by sequential scans:
+ * the scan owns a small ring of frames and every page it misses on replaces
+ * the page it loaded ringSize misses ago, so a large scan cycles through its
+ * own frames instead of pushing the rest of the pool out.
+ * <p>
+ * A strategy belongs to a single iterator, but read-ahead threads load
+ * pages on behalf of the iterator concurrently, so the ring is guarded by
+ * the strategy's own monitor.
+ */
+public class BufferAccessStrategy {
+
+    /** Upper bound of the ring size of a bulk read strategy, in pages. */
+    public static final int BULK_READ_RING_PAGES = 16;
+
+    private final PageId[] ring;
+    private int current;
+
+    /**
+     * @param ringSize the number of frames the ring may occupy, at least 1
+     */
+    public BufferAccessStrategy(int ringSize) {
+        if (ringSize < 1) {
+            throw new IllegalArgumentException("BufferAccessStrategy: ring size must be at least 1");
+        }
+        this.ring = new PageId[ringSize];
+        this.current = 0;
+    }
+
+    /**
+     * @return the number of frames of this ring
+     */
+    public int getRingSize() {
+        return ring.length;
+    }
+
+    /**
+     * Claims the next ring slot for the specified page, which is about to
+     * be loaded, and moves on to the following slot. Claiming is a single
+     * step, so the iterator and its read-ahead threads never share a slot.
+     *
+     * @return the page the slot held, which the new page replaces, or null
+     *     while the ring is still filling up
+     */
+    synchronized PageId claimSlot(PageId pid) {
+        PageId victim = ring[current];
+        ring[current] = pid;
+        current = (current + 1) % ring.length;
+        return victim;
+    }
+}
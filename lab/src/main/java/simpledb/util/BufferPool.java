@@ -2,12 +2,32 @@ package simpledb.util;
 
 import simpledb.exception.DbException;
 import simpledb.exception.TransactionAbortedException;
+import simpledb.log.Debug;
 import simpledb.model.*;
+import simpledb.model.dbfile.DbFile;
 import simpledb.model.page.Page;
 import simpledb.model.pageid.PageId;
+import simpledb.util.eviction.EvictionPolicy;
+import simpledb.util.eviction.LruEvictionPolicy;
+import simpledb.util.lock.LockManager;
+import simpledb.util.lock.VictimPolicy;
+import simpledb.util.metrics.MetricsRegistry;
 
+import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
 
 /**
  * BufferPool manages the reading and writing of pages into memory from
@@ -17,11 +37,43 @@ import java.util.concurrent.ConcurrentHashMap;
  * The BufferPool is also responsible for locking;  when a transaction fetches
  * a page, BufferPool checks that the transaction has the appropriate
  * locks to read/write the page.
+ * <p>
+ * Pages live in a fixed table of numPages {@link Frame}s, found through a
+ * concurrent map from PageId to frame. Lookups of cached pages take no
+ * BufferPool-wide lock: a hit only marks the frame as referenced, and the
+ * marked pages are handed to the eviction policy in one go before it picks
+ * a victim. Callers that use a page over many calls can pin it
+ * with {@link #pinPage} so that it can't be evicted until it is unpinned.
+ * On a miss, the thread that maps a claimed frame to the page first is
+ * the only one reading it from disk; concurrent misses
+ * on the same page wait for that frame to finish loading. The pool can
+ * never hold more than numPages pages, since a page needs a frame.
+ * <p>
+ * An off-heap pool reads pages into frame buffers allocated outside of the
+ * Java heap by a {@link FrameArena}, so the page bytes cached by a large
+ * pool add nothing to garbage collection pauses.
+ * <p>
+ * For a warm restart the pool can dump the ids of its resident pages to a
+ * file periodically, see {@link #startPageDumps}, and a new pool reads the
+ * dumped pages back in the background with {@link #warmUp}.
+ * <p>
+ * Clean pages evicted from the pool may be kept compressed in a second
+ * tier, see {@link #setCompressedTierBytes}, and are inflated back into
+ * the pool on their next miss.
+ * <p>
+ * Tables compete for frames according to their {@link BufferQuota} in the
+ * catalog: priorities order eviction, reservations protect a table's last
+ * pages and caps bound the pages a table may hold.
+ * <p>
+ * Files may use pages larger or smaller than the default page size, see
+ * {@link simpledb.model.dbfile.HeapFile}. The capacity of the pool counts
+ * pages of any size, and frame buffers are only used for default sized
+ * pages; other pages are read into buffers of their own.
  * 
  * @Threadsafe, all fields are final
  */
 public class BufferPool {
-    /** Bytes per page, including header. */
+    /** Default bytes per page, including header. */
     private static final int PAGE_SIZE = 4096;
 
     /** Default number of pages passed to the constructor. This is used by
@@ -29,23 +81,421 @@ public class BufferPool {
     constructor instead. */
     public static final int DEFAULT_PAGES = 50;
 
+    /** Default upper bound of the read-ahead window of sequential scans, in pages. */
+    public static final int DEFAULT_READ_AHEAD_PAGES = 8;
+
+    private static final int READ_AHEAD_THREADS = 2;
+
+    /**
+     * Default number of committed page images that may wait for the
+     * background writer. 0 makes commits wait until their pages are written.
+     */
+    public static final int DEFAULT_DIRTY_HIGH_WATER_MARK = 0;
+
+    /** Default capacity of the compressed second tier in bytes, 0 disables it. */
+    public static final long DEFAULT_COMPRESSED_TIER_BYTES = 0;
+
+    /** Names of the metrics in {@link #getMetrics()}; hits and misses also count per table, see {@link #tableMetric}. */
+    public static final String METRIC_HITS = "bufferpool.hits";
+    public static final String METRIC_MISSES = "bufferpool.misses";
+    public static final String METRIC_EVICTIONS = "bufferpool.evictions";
+    /** Requests that waited for another thread to load or evict the frame of their page. */
+    public static final String METRIC_FRAME_WAITS = "bufferpool.frame.waits";
+    public static final String METRIC_CACHED_PAGES = "bufferpool.pages.cached";
+    public static final String METRIC_DIRTY_PAGES = "bufferpool.pages.dirty";
+    public static final String METRIC_PINNED_PAGES = "bufferpool.pages.pinned";
+    public static final String METRIC_PENDING_WRITES = "bufferpool.writes.pending";
+    /** Misses served from the compressed second tier instead of the disk. */
+    public static final String METRIC_TIER2_HITS = "bufferpool.tier2.hits";
+    public static final String METRIC_TIER2_DEMOTIONS = "bufferpool.tier2.demotions";
+    public static final String METRIC_TIER2_PAGES = "bufferpool.tier2.pages";
+    public static final String METRIC_TIER2_BYTES = "bufferpool.tier2.bytes";
+    /** Calls of DbFile.readPages made to read pages ahead in batches. */
+    public static final String METRIC_BATCH_READS = "bufferpool.batch.reads";
+    /** Histogram of the latency of DbFile.readPage on misses, in nanoseconds. */
+    public static final String METRIC_READ_NANOS = "dbfile.readPage.nanos";
+
     private final int numPages;
-    private ConcurrentHashMap<PageId, Page> bufferPool;
+    private final Frame[] frames;
+    private final ConcurrentHashMap<PageId, Frame> pageTable;
+    private final ConcurrentLinkedQueue<Frame> freeFrames;
+    // 命中过、尚未告诉淘汰策略的页，每个frame标记一次只入队一次
+    private final ConcurrentLinkedQueue<PageId> referencedPages = new ConcurrentLinkedQueue<>();
+    private final EvictionPolicy evictionPolicy;
+    private final ThreadPoolExecutor readAheadExecutor;
+    private volatile int maxReadAheadPages;
+    private final LockManager lockManager;
+    private final DirtyPageWriter writer;
+    private final HotPageDumper pageDumper;
+    private final MetricsRegistry metrics;
+    private final CompressedPageCache compressedTier;
+    // 每个表当前缓存的页数，用于按表配额淘汰
+    private final ConcurrentHashMap<Integer, AtomicInteger> tablePages;
+
     /**
-     * Creates a BufferPool that caches up to numPages pages.
+     * Creates a BufferPool that caches up to numPages pages, evicting
+     * pages in least recently used order.
      *
      * @param numPages maximum number of pages in this buffer pool.
      */
     public BufferPool(int numPages) {
+        this(numPages, new LruEvictionPolicy());
+    }
+
+    /**
+     * Creates a BufferPool that caches up to numPages pages.
+     *
+     * @param numPages maximum number of pages in this buffer pool.
+     * @param evictionPolicy decides which page is evicted when the pool is full.
+     */
+    public BufferPool(int numPages, EvictionPolicy evictionPolicy) {
+        this(numPages, evictionPolicy, VictimPolicy.YOUNGEST);
+    }
+
+    /**
+     * Creates a BufferPool that caches up to numPages pages.
+     *
+     * @param numPages maximum number of pages in this buffer pool.
+     * @param evictionPolicy decides which page is evicted when the pool is full.
+     * @param victimPolicy decides which transaction is aborted to break a deadlock.
+     */
+    public BufferPool(int numPages, EvictionPolicy evictionPolicy, VictimPolicy victimPolicy) {
+        this(numPages, evictionPolicy, victimPolicy, false);
+    }
+
+    /**
+     * Creates a BufferPool that caches up to numPages pages.
+     *
+     * @param numPages maximum number of pages in this buffer pool.
+     * @param evictionPolicy decides which page is evicted when the pool is full.
+     * @param victimPolicy decides which transaction is aborted to break a deadlock.
+     * @param offHeap whether pages are read into frame buffers outside of the Java heap
+     */
+    public BufferPool(int numPages, EvictionPolicy evictionPolicy, VictimPolicy victimPolicy, boolean offHeap) {
         // some code goes here
         this.numPages = numPages;
-        this.bufferPool = new ConcurrentHashMap<>(numPages);
+        this.frames = new Frame[numPages];
+        this.pageTable = new ConcurrentHashMap<>(numPages);
+        this.freeFrames = new ConcurrentLinkedQueue<>();
+        FrameArena arena = offHeap ? new FrameArena(numPages, PAGE_SIZE) : null;
+        for (int i = 0; i < numPages; i++) {
+            frames[i] = new Frame(arena == null ? null : arena.frameBuffer(i));
+            freeFrames.add(frames[i]);
+        }
+        this.evictionPolicy = evictionPolicy;
+        this.lockManager = new LockManager(LockManager.DEFAULT_STRIPES, victimPolicy);
+        this.maxReadAheadPages = DEFAULT_READ_AHEAD_PAGES;
+        this.writer = new DirtyPageWriter(DEFAULT_DIRTY_HIGH_WATER_MARK);
+        this.pageDumper = new HotPageDumper(this::residentPagesByRecency);
+        this.metrics = new MetricsRegistry();
+        this.compressedTier = new CompressedPageCache(DEFAULT_COMPRESSED_TIER_BYTES);
+        this.tablePages = new ConcurrentHashMap<>();
+        metrics.registerGauge(METRIC_CACHED_PAGES, () -> countFrames(frame -> true));
+        metrics.registerGauge(METRIC_DIRTY_PAGES, () -> countFrames(frame -> {
+            Page page = frame.getPage();
+            return page != null && page.isDirty() != null;
+        }));
+        metrics.registerGauge(METRIC_PINNED_PAGES, () -> countFrames(frame -> frame.getPinCount() > 0));
+        metrics.registerGauge(METRIC_PENDING_WRITES, writer::getPendingCount);
+        metrics.registerGauge(METRIC_TIER2_PAGES, compressedTier::size);
+        metrics.registerGauge(METRIC_TIER2_BYTES, compressedTier::getUsedBytes);
+        // idle read-ahead threads time out, so discarded pools don't leak threads
+        this.readAheadExecutor = new ThreadPoolExecutor(READ_AHEAD_THREADS, READ_AHEAD_THREADS,
+                1, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+                    Thread t = new Thread(r, "BufferPool-read-ahead");
+                    t.setDaemon(true);
+                    return t;
+                });
+        this.readAheadExecutor.allowCoreThreadTimeOut(true);
     }
     
+    /**
+     * @return the default page size, the page size of files without a header
+     */
     public static int getPageSize() {
       return PAGE_SIZE;
     }
 
+    /**
+     * @return the upper bound of the read-ahead window of sequential scans
+     */
+    public int getMaxReadAheadPages() {
+        return maxReadAheadPages;
+    }
+
+    /**
+     * Set the upper bound of the read-ahead window of sequential scans.
+     *
+     * @param pages the maximum number of pages read ahead, 0 disables read-ahead
+     */
+    public void setMaxReadAheadPages(int pages) {
+        this.maxReadAheadPages = Math.max(0, pages);
+    }
+
+    /**
+     * @return the number of committed page images that may wait for the
+     *     background writer while commits return without waiting for
+     *     their own writes
+     */
+    public int getDirtyPageHighWaterMark() {
+        return writer.getHighWaterMark();
+    }
+
+    /**
+     * Set how many committed page images may wait for the background writer
+     * while commits return without waiting for their own writes. Above the
+     * mark a commit waits until its own pages are written, never for those
+     * of other commits. Pages whose images are not written yet are lost if
+     * the process dies, 0 makes every commit wait for its writes.
+     *
+     * @param pages the high-water mark, in pages
+     */
+    public void setDirtyPageHighWaterMark(int pages) {
+        writer.setHighWaterMark(pages);
+    }
+
+    /**
+     * @return the number of cached pages of the specified table
+     */
+    public int getCachedPageCount(int tableId) {
+        AtomicInteger cached = tablePages.get(tableId);
+        return cached == null ? 0 : cached.get();
+    }
+
+    /**
+     * @return the capacity of the compressed second tier in bytes
+     */
+    public long getCompressedTierBytes() {
+        return compressedTier.getCapacityBytes();
+    }
+
+    /**
+     * Sets the capacity of the compressed second tier. Clean pages evicted
+     * from the pool are compressed into this tier and a miss on them is
+     * served from it, which is much cheaper than a disk read. 0 disables
+     * the tier.
+     *
+     * @param bytes the maximum number of bytes of compressed pages
+     */
+    public void setCompressedTierBytes(long bytes) {
+        compressedTier.setCapacityBytes(bytes);
+    }
+
+    /**
+     * @return the number of committed page images not written to disk yet
+     */
+    public int getPendingWriteCount() {
+        return writer.getPendingCount();
+    }
+
+    /**
+     * @return the lock manager of this pool, which also counts deadlocks
+     */
+    public LockManager getLockManager() {
+        return lockManager;
+    }
+
+    /**
+     * @return true if the specified page is currently cached in this pool
+     */
+    public boolean isCached(PageId pid) {
+        return getCachedPage(pid) != null;
+    }
+
+    /**
+     * @return true if the specified page is cached in this pool or being
+     *     read into it
+     */
+    public boolean isCachedOrLoading(PageId pid) {
+        Frame frame = pageTable.get(pid);
+        return frame != null && frame.getState() == Frame.LOADING && pid.equals(frame.getPageId())
+                || isCached(pid);
+    }
+
+    /**
+     * @return the specified page if it is cached and loaded, null otherwise
+     */
+    private Page getCachedPage(PageId pid) {
+        Frame frame = pageTable.get(pid);
+        if (frame == null) {
+            return null;
+        }
+        Page page = frame.getPage();
+        return frame.getState() == Frame.VALID && page != null && pid.equals(page.getId()) ? page : null;
+    }
+
+    /**
+     * Asynchronously load the specified page into the pool, unless it is
+     * already cached. No lock is acquired: the page only becomes visible to
+     * a transaction through a later {@link #getPage} call.
+     *
+     * @param pid the ID of the page to load
+     * @param strategy the access strategy to load the page with, or null
+     */
+    public void prefetchPage(PageId pid, BufferAccessStrategy strategy) {
+        if (pageTable.containsKey(pid)) {
+            return;
+        }
+        try {
+            readAheadExecutor.execute(() -> {
+                try {
+                    loadPage(pid, strategy, false);
+                } catch (DbException | RuntimeException e) {
+                    // read-ahead is only a hint, the scan reads the page itself if needed
+                    Debug.log("BufferPool: read-ahead of %s failed: %s", pid, e.getMessage());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            Debug.log("BufferPool: read-ahead of %s rejected", pid);
+        }
+    }
+
+
+    /**
+     * @return the metrics of this pool, see the METRIC_ constants for their names
+     */
+    public MetricsRegistry getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return the name of the per table variant of a hit or miss metric
+     */
+    public static String tableMetric(String metric, int tableId) {
+        return metric + ".table." + tableId;
+    }
+
+    private void countAccess(String metric, PageId pid) {
+        metrics.increment(metric);
+        metrics.increment(tableMetric(metric, pid.getTableId()));
+    }
+
+    /**
+     * @return the number of frames holding a valid page that matches the predicate
+     */
+    private long countFrames(Predicate<Frame> predicate) {
+        long n = 0;
+        for (Frame frame : frames) {
+            if (frame.getState() == Frame.VALID && frame.getPage() != null && predicate.test(frame)) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * @return the ids of the cached pages, most recently used first
+     */
+    private List<PageId> residentPagesByRecency() {
+        recordReferences();
+        List<PageId> pages = evictionPolicy.pagesByRecency();
+        pages.removeIf(pid -> !isCached(pid));
+        return pages;
+    }
+
+    /**
+     * Writes the ids of the cached pages to the specified file, most
+     * recently used first, for a later {@link #warmUp}.
+     */
+    public void dumpResidentPages(File dumpFile) throws IOException {
+        pageDumper.dump(dumpFile);
+    }
+
+    /**
+     * Dumps the ids of the cached pages to the specified file every
+     * periodMillis milliseconds, until {@link #stopPageDumps} is called.
+     * Start the dumps only after {@link #warmUp} has read the previous dump,
+     * since the first dump replaces it.
+     */
+    public void startPageDumps(File dumpFile, long periodMillis) {
+        pageDumper.start(dumpFile, periodMillis);
+    }
+
+    /**
+     * Stops the periodic dumps started by {@link #startPageDumps} and the
+     * thread that runs them. Database stops the dumps of a pool it
+     * replaces.
+     */
+    public void stopPageDumps() {
+        pageDumper.stop();
+    }
+
+    /**
+     * Reads the pages listed in a dump back into the pool in the
+     * background. The most recently used pages of the dump that fit into
+     * the pool are read in file offset order, and only into free frames, so
+     * warming up never evicts pages that queries have read meanwhile. Pages
+     * of tables missing from the catalog are skipped, so call this once
+     * the catalog is loaded.
+     *
+     * @param dumpFile a file written by {@link #dumpResidentPages}; nothing
+     *     is read if it doesn't exist
+     * @return the number of pages read, once reading is done
+     * @throws IOException if the dump can't be read
+     */
+    public Future<Integer> warmUp(File dumpFile) throws IOException {
+        List<PageId> dumped = HotPageDumper.read(dumpFile);
+        ArrayList<PageId> pages = new ArrayList<>(dumped.subList(0, Math.min(numPages, dumped.size())));
+        pages.sort(Comparator.comparingInt(PageId::getTableId).thenComparingInt(PageId::pageNumber));
+        return readAheadExecutor.submit(() -> {
+            int loaded = 0;
+            for (PageId pid : pages) {
+                if (freeFrames.isEmpty()) {
+                    break;
+                }
+                if (pageTable.containsKey(pid)) {
+                    continue;
+                }
+                try {
+                    loadPage(pid, null, false);
+                    loaded++;
+                } catch (DbException | RuntimeException e) {
+                    // the table may have been dropped or truncated since the dump
+                    Debug.log("BufferPool: warm-up of %s failed: %s", pid, e.getMessage());
+                }
+            }
+            return loaded;
+        });
+    }
+
+    /**
+     * Asynchronously load the specified pages of one table into the pool,
+     * skipping the cached ones. Runs of adjacent pages are read with a
+     * single request, see {@link DbFile#readPages}. No lock is acquired, as
+     * with {@link #prefetchPage}.
+     *
+     * @param pids the IDs of the pages to load, all of the same table
+     * @param strategy the access strategy to load the pages with, or null
+     */
+    public void prefetchPages(List<PageId> pids, BufferAccessStrategy strategy) {
+        try {
+            readAheadExecutor.execute(() -> {
+                try {
+                    loadPages(pids, strategy);
+                } catch (DbException | RuntimeException e) {
+                    // read-ahead is only a hint, the scan reads the pages itself if needed
+                    Debug.log("BufferPool: read-ahead of %s failed: %s", pids, e.getMessage());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            Debug.log("BufferPool: read-ahead of %s rejected", pids);
+        }
+    }
+
+    /**
+     * Returns a bulk read strategy for sequentially scanning a file of the
+     * specified size, or null if the whole file fits into this pool and
+     * can simply be cached.
+     *
+     * @param filePages the number of pages of the scanned file
+     */
+    public BufferAccessStrategy getBulkReadStrategy(int filePages) {
+        if (filePages <= numPages) {
+            return null;
+        }
+        int ringSize = Math.min(BufferAccessStrategy.BULK_READ_RING_PAGES, numPages / 8);
+        return new BufferAccessStrategy(Math.max(1, ringSize));
+    }
 
     /**
      * Retrieve the specified page with the associated permissions.
@@ -63,22 +513,336 @@ public class BufferPool {
      * @param perm the requested permissions on the page
      */
     public Page getPage(TransactionId tid, PageId pid, Permissions perm)
+        throws TransactionAbortedException, DbException {
+        return getPage(tid, pid, perm, null);
+    }
+
+    /**
+     * Retrieve the specified page with the associated permissions, loading
+     * it according to the specified access strategy on a miss.
+     *
+     * @param tid the ID of the transaction requesting the page
+     * @param pid the ID of the requested page
+     * @param perm the requested permissions on the page
+     * @param strategy the access strategy of the caller, or null for the default behavior
+     * @see #getPage(TransactionId, PageId, Permissions)
+     */
+    public Page getPage(TransactionId tid, PageId pid, Permissions perm, BufferAccessStrategy strategy)
         throws TransactionAbortedException, DbException {
         // some code goes here
-        if (bufferPool.containsKey(pid)) {
-            return bufferPool.get(pid);
-        } else {
-            if (bufferPool.size() < numPages) {
-                Page page =
-                        Database.getCatalog()
-                        .getDatabaseFile(pid.getTableId())
-                        .readPage(pid);
-                bufferPool.put(pid, page);
+        LockManager.LockMode mode = perm == Permissions.READ_WRITE
+                ? LockManager.LockMode.EXCLUSIVE : LockManager.LockMode.SHARED;
+        lockManager.acquire(tid, pid, mode);
+        return loadPage(pid, strategy, true);
+    }
+
+    /**
+     * Retrieve the specified page like {@link #getPage} and pin its frame,
+     * so that the page is not evicted until {@link #unpinPage} is called
+     * for it. Every pinPage must be followed by exactly one unpinPage, a
+     * page may be pinned several times. Discarding a page drops its pins;
+     * unpinning it afterwards has no effect, even once it is read again.
+     *
+     * @param tid the ID of the transaction requesting the page
+     * @param pid the ID of the requested page
+     * @param perm the requested permissions on the page
+     * @param strategy the access strategy of the caller, or null for the default behavior
+     */
+    public Page pinPage(TransactionId tid, PageId pid, Permissions perm, BufferAccessStrategy strategy)
+        throws TransactionAbortedException, DbException {
+        Page page = getPage(tid, pid, perm, strategy);
+        while (true) {
+            Frame frame = pageTable.get(pid);
+            if (frame != null && frame.pin(page)) {
                 return page;
-            } else {
-                throw new DbException("BufferPool: BufferPool is full");
+            }
+            // evicted between loading and pinning, load it again
+            page = loadPage(pid, strategy, true);
+        }
+    }
+
+    /**
+     * Release one pin of the specified page, making it evictable again once
+     * no pins are left. The pin only counts while the frame still holds the
+     * page that pinPage returned, not a later copy read after a discard.
+     *
+     * @param page the page pinPage returned
+     */
+    public void unpinPage(Page page) {
+        Frame frame = pageTable.get(page.getId());
+        if (frame != null) {
+            frame.unpin(page);
+        }
+    }
+
+    /**
+     * @return true if the specified page is cached and pinned
+     */
+    public boolean isPinned(PageId pid) {
+        Frame frame = pageTable.get(pid);
+        return frame != null && pid.equals(frame.getPageId()) && frame.getPinCount() > 0;
+    }
+
+    /**
+     * Returns the specified page, reading it from disk into the pool on a miss.
+     *
+     * @param demand whether a transaction asked for the page, as opposed to
+     *     read-ahead; only demand reads count as hits and misses
+     */
+    private Page loadPage(PageId pid, BufferAccessStrategy strategy, boolean demand) throws DbException {
+        while (true) {
+            Frame frame = pageTable.get(pid);
+            if (frame != null) {
+                // a frame may be reused for another page at any time, the page's own id tells
+                Page page = frame.getPage();
+                if (frame.getState() == Frame.VALID && page != null && pid.equals(page.getId())) {
+                    if (frame.markReferenced()) {
+                        referencedPages.add(pid);
+                    }
+                    if (demand && metrics.isEnabled()) {
+                        countAccess(METRIC_HITS, pid);
+                    }
+                    return page;
+                }
+                awaitFrame(frame, pid);
+                continue;
+            }
+
+            if (Database.getCatalog().hasBufferQuotas()) {
+                enforceCap(pid);
+            }
+            frame = allocateFrame(pid, strategy);
+            frame.startLoading(pid);
+            if (pageTable.putIfAbsent(pid, frame) != null) {
+                // 其他线程已经在加载该页，归还 frame 并等待其加载完成
+                frame.free();
+                freeFrames.add(frame);
+                continue;
+            }
+            if (demand && metrics.isEnabled()) {
+                countAccess(METRIC_MISSES, pid);
+            }
+            Page page = null;
+            try {
+                DbFile file = Database.getCatalog().getDatabaseFile(pid.getTableId());
+                page = promote(pid, file, frame);
+                if (page != null) {
+                    metrics.increment(METRIC_TIER2_HITS);
+                } else if (metrics.isEnabled()) {
+                    long start = System.nanoTime();
+                    page = file.readPage(pid, frame.getBuffer());
+                    metrics.record(METRIC_READ_NANOS, System.nanoTime() - start);
+                } else {
+                    page = file.readPage(pid, frame.getBuffer());
+                }
+            } finally {
+                if (page == null) {
+                    pageTable.remove(pid, frame);
+                    frame.finishLoading(null);
+                    freeFrames.add(frame);
+                }
+            }
+            // recorded while the frame is still LOADING, so it can't have been discarded yet
+            evictionPolicy.recordAccess(pid);
+            frame.finishLoading(page);
+            tablePages.computeIfAbsent(pid.getTableId(), k -> new AtomicInteger()).incrementAndGet();
+            return page;
+        }
+    }
+
+    /**
+     * Reads the uncached pages among the specified ones into the pool with
+     * one {@link DbFile#readPages} call. The frames of all those pages are
+     * claimed first, so concurrent requests for them wait for the batch
+     * instead of reading the pages themselves.
+     */
+    private void loadPages(List<PageId> pids, BufferAccessStrategy strategy) throws DbException {
+        ArrayList<PageId> claimedIds = new ArrayList<>();
+        ArrayList<Frame> claimed = new ArrayList<>();
+        ArrayList<Page> pages = new ArrayList<>();
+        boolean done = false;
+        try {
+            for (PageId pid : pids) {
+                if (pageTable.containsKey(pid)) {
+                    continue;
+                }
+                if (Database.getCatalog().hasBufferQuotas()) {
+                    enforceCap(pid);
+                }
+                Frame frame = allocateFrame(pid, strategy);
+                frame.startLoading(pid);
+                if (pageTable.putIfAbsent(pid, frame) != null) {
+                    frame.free();
+                    freeFrames.add(frame);
+                    continue;
+                }
+                claimedIds.add(pid);
+                claimed.add(frame);
+            }
+            if (claimed.isEmpty()) {
+                done = true;
+                return;
+            }
+            DbFile file = Database.getCatalog().getDatabaseFile(claimedIds.get(0).getTableId());
+            ArrayList<PageId> readIds = new ArrayList<>();
+            ArrayList<ByteBuffer> buffers = new ArrayList<>();
+            for (int i = 0; i < claimed.size(); i++) {
+                Page page = promote(claimedIds.get(i), file, claimed.get(i));
+                if (page != null) {
+                    metrics.increment(METRIC_TIER2_HITS);
+                } else {
+                    readIds.add(claimedIds.get(i));
+                    buffers.add(claimed.get(i).getBuffer());
+                }
+                pages.add(page);
+            }
+            if (!readIds.isEmpty()) {
+                List<Page> read = file.readPages(readIds, buffers);
+                metrics.increment(METRIC_BATCH_READS);
+                int next = 0;
+                for (int i = 0; i < pages.size(); i++) {
+                    if (pages.get(i) == null) {
+                        pages.set(i, read.get(next++));
+                    }
+                }
+            }
+            done = true;
+        } finally {
+            if (!done) {
+                for (int i = 0; i < claimed.size(); i++) {
+                    pageTable.remove(claimedIds.get(i), claimed.get(i));
+                    claimed.get(i).finishLoading(null);
+                    freeFrames.add(claimed.get(i));
+                }
+            }
+        }
+        for (int i = 0; i < claimed.size(); i++) {
+            PageId pid = claimedIds.get(i);
+            evictionPolicy.recordAccess(pid);
+            claimed.get(i).finishLoading(pages.get(i));
+            tablePages.computeIfAbsent(pid.getTableId(), k -> new AtomicInteger()).incrementAndGet();
+        }
+    }
+
+    /**
+     * Takes the specified page out of the compressed tier into the frame.
+     *
+     * @return the page, or null if the tier doesn't hold it
+     */
+    private Page promote(PageId pid, DbFile file, Frame frame) {
+        byte[] data = compressedTier.take(pid);
+        if (data == null) {
+            return null;
+        }
+        ByteBuffer buf = frame.getBuffer();
+        if (buf != null && buf.capacity() == data.length) {
+            buf.clear();
+            buf.put(data);
+            buf.flip();
+        } else {
+            buf = ByteBuffer.wrap(data);
+        }
+        try {
+            return file.decodePage(pid, buf);
+        } catch (IOException e) {
+            Debug.log("BufferPool: failed to decode %s from the compressed tier: %s", pid, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Compresses the page of a frame claimed for eviction into the
+     * compressed tier. The frame is still in the page table, so no other
+     * thread can load the page meanwhile.
+     */
+    private void demote(Frame frame) {
+        Page page = frame.getPage();
+        if (compressedTier.getCapacityBytes() > 0 && page != null
+                && compressedTier.put(frame.getPageId(), page.getPageData())) {
+            metrics.increment(METRIC_TIER2_DEMOTIONS);
+        }
+    }
+
+    /**
+     * Waits until a frame that was found in the page table but didn't hold
+     * a usable page is done loading it or has left the page table.
+     */
+    private void awaitFrame(Frame frame, PageId pid) throws DbException {
+        metrics.increment(METRIC_FRAME_WAITS);
+        if (frame.getState() == Frame.LOADING) {
+            try {
+                frame.awaitLoaded(pid);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new DbException("BufferPool: interrupted while waiting for page " + pid);
+            }
+        } else {
+            // the frame is being evicted and will leave the page table shortly
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Returns a FREE frame to load the specified page into, evicting a page
+     * if no frame is free. A bulk read strategy hands the page a slot of its
+     * ring and gives up the page that held the slot first; a ring page that
+     * is pinned or still loading moves on to the next slot instead, so every
+     * page the ring loaded stays owned by a slot.
+     */
+    private Frame allocateFrame(PageId pid, BufferAccessStrategy strategy) throws DbException {
+        if (strategy != null) {
+            // reuse the ring's own frame instead of taking one from the pool
+            PageId slotPage = pid;
+            for (int i = 0; i < strategy.getRingSize(); i++) {
+                PageId recycled = strategy.claimSlot(slotPage);
+                Frame frame = recycled == null ? null : pageTable.get(recycled);
+                if (frame == null || !recycled.equals(frame.getPageId())) {
+                    // 槽位为空或其页已不在池中：有空闲frame就用，否则换出下一个槽位的页
+                    Frame free = freeFrames.poll();
+                    if (free != null) {
+                        return free;
+                    }
+                    slotPage = null;
+                    continue;
+                }
+                if (claimForEviction(frame)) {
+                    metrics.increment(METRIC_EVICTIONS);
+                    release(frame);
+                    return frame;
+                }
+                // 被钉住或正在加载的页仍属于环，放回下一个槽位
+                slotPage = recycled;
             }
         }
+        while (true) {
+            Frame frame = freeFrames.poll();
+            if (frame != null) {
+                return frame;
+            }
+            evictPage();
+        }
+    }
+
+    /**
+     * Removes a frame claimed for eviction from the page table and frees it.
+     */
+    private void release(Frame frame) {
+        PageId pid = frame.getPageId();
+        pageTable.remove(pid, frame);
+        AtomicInteger cached = tablePages.get(pid.getTableId());
+        if (cached != null) {
+            cached.decrementAndGet();
+        }
+        synchronized (frame) {
+            // recordReferences checks the frame under the same monitor
+            evictionPolicy.remove(pid);
+        }
+        Page page = frame.getPage();
+        if (frame.getBuffer() != null && page != null) {
+            // callers may still hold the page, it must not see the frame's next page
+            page.detach();
+        }
+        frame.free();
     }
 
     /**
@@ -93,6 +857,7 @@ public class BufferPool {
     public  void releasePage(TransactionId tid, PageId pid) {
         // some code goes here
         // not necessary for lab1|lab2
+        lockManager.release(tid, pid);
     }
 
     /**
@@ -103,13 +868,14 @@ public class BufferPool {
     public void transactionComplete(TransactionId tid) throws IOException {
         // some code goes here
         // not necessary for lab1|lab2
+        transactionComplete(tid, true);
     }
 
     /** Return true if the specified transaction has a lock on the specified page */
     public boolean holdsLock(TransactionId tid, PageId p) {
         // some code goes here
         // not necessary for lab1|lab2
-        return false;
+        return lockManager.holdsLock(tid, p);
     }
 
     /**
@@ -123,6 +889,36 @@ public class BufferPool {
         throws IOException {
         // some code goes here
         // not necessary for lab1|lab2
+        DirtyPageWriter.Batch batch = commit ? writer.newBatch() : null;
+        try {
+            // a page can only be dirtied by the transaction holding its exclusive lock
+            for (PageId pid : lockManager.getLockedPages(tid)) {
+                Page page = getCachedPage(pid);
+                if (page == null || !isDirtiedBy(page, tid)) {
+                    continue;
+                }
+                if (commit) {
+                    // the image is queued before the page turns clean, so it can't be evicted unwritten
+                    page.setBeforeImage();
+                    writer.enqueue(batch, Database.getCatalog().getDatabaseFile(pid.getTableId()), page.getBeforeImage());
+                    page.markDirty(false, null);
+                } else {
+                    // 回滚：丢弃内存中的修改，下次访问时从磁盘重新读取
+                    discardPage(pid);
+                }
+            }
+            if (commit) {
+                // the writer takes the pages of this commit as one batch
+                writer.submit(batch);
+                writer.awaitCommitted(batch);
+            }
+        } finally {
+            if (commit) {
+                // queued images must not be stranded if the loop failed halfway
+                writer.submit(batch);
+            }
+            lockManager.releaseAll(tid);
+        }
     }
 
     /**
@@ -143,6 +939,10 @@ public class BufferPool {
         throws DbException, IOException, TransactionAbortedException {
         // some code goes here
         // not necessary for lab1
+        DbFile file = Database.getCatalog().getDatabaseFile(tableId);
+        for (Page page : file.insertTuple(tid, t)) {
+            page.markDirty(true, tid);
+        }
     }
 
     /**
@@ -162,6 +962,11 @@ public class BufferPool {
         throws DbException, TransactionAbortedException {
         // some code goes here
         // not necessary for lab1
+        if (t.getRecordId() == null) {
+            throw new DbException("BufferPool: tuple to delete is not stored in a table");
+        }
+        DbFile file = Database.getCatalog().getDatabaseFile(t.getRecordId().getPageId().getTableId());
+        file.deleteTuple(tid, t).markDirty(true, tid);
     }
 
     /**
@@ -172,7 +977,10 @@ public class BufferPool {
     public synchronized void flushAllPages() throws IOException {
         // some code goes here
         // not necessary for lab1
-
+        for (PageId pid : pageTable.keySet()) {
+            flushPage(pid);
+        }
+        writer.flush();
     }
 
     /** Remove the specific page id from the buffer pool.
@@ -180,9 +988,41 @@ public class BufferPool {
         buffer pool doesn't keep a rolled back page in its
         cache.
     */
-    public synchronized void discardPage(PageId pid) {
+    public void discardPage(PageId pid) {
         // some code goes here
         // only necessary for lab5
+        try {
+            // the next read of the page must see its last committed image
+            writer.awaitWritten(pid);
+        } catch (IOException e) {
+            Debug.log("BufferPool: discarding %s before its committed image was written: %s", pid, e.getMessage());
+        }
+        compressedTier.remove(pid);
+        while (true) {
+            Frame frame = pageTable.get(pid);
+            if (frame == null || !pid.equals(frame.getPageId())) {
+                return;
+            }
+            int state = frame.getState();
+            if (state == Frame.VALID) {
+                // unlike eviction, dirty and pinned pages are discarded as well
+                if (frame.compareAndSetState(Frame.VALID, Frame.EVICTING)) {
+                    release(frame);
+                    freeFrames.add(frame);
+                    return;
+                }
+            } else if (state == Frame.LOADING) {
+                try {
+                    frame.awaitLoaded(pid);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            } else {
+                // already being evicted by another thread
+                return;
+            }
+        }
     }
 
     /**
@@ -192,6 +1032,13 @@ public class BufferPool {
     private synchronized  void flushPage(PageId pid) throws IOException {
         // some code goes here
         // not necessary for lab1
+        Page page = getCachedPage(pid);
+        if (page != null && page.isDirty() != null) {
+            // an older committed image must not overwrite this one later
+            writer.awaitWritten(pid);
+            Database.getCatalog().getDatabaseFile(pid.getTableId()).writePage(page);
+            page.markDirty(false, null);
+        }
     }
 
     /** Write all pages of the specified transaction to disk.
@@ -199,15 +1046,158 @@ public class BufferPool {
     public synchronized  void flushPages(TransactionId tid) throws IOException {
         // some code goes here
         // not necessary for lab1|lab2
+        for (PageId pid : lockManager.getLockedPages(tid)) {
+            Page page = getCachedPage(pid);
+            if (page != null && isDirtiedBy(page, tid)) {
+                flushPage(pid);
+            }
+        }
     }
 
     /**
-     * Discards a page from the buffer pool.
-     * Flushes the page to disk to ensure dirty pages are updated on disk.
+     * Discards a page from the buffer pool and puts its frame on the free list.
+     * Dirty pages are never evicted (NO STEAL): their changes only reach the
+     * disk when the transaction that dirtied them commits.
      */
-    private synchronized  void evictPage() throws DbException {
+    private void evictPage() throws DbException {
         // some code goes here
         // not necessary for lab1
+        while (true) {
+            PageId victim = chooseVictim();
+            if (victim == null) {
+                if (!freeFrames.isEmpty()) {
+                    // a concurrent discard freed a frame meanwhile
+                    return;
+                }
+                if (writer.getPendingCount() > 0) {
+                    // committed pages become evictable once the writer has written them
+                    try {
+                        writer.flush();
+                    } catch (IOException e) {
+                        throw new DbException("BufferPool: failed to write committed pages: " + e.getMessage());
+                    }
+                    continue;
+                }
+                throw new DbException("BufferPool: all pages are dirty or in use, no page can be evicted");
+            }
+            // lost the race for the victim to another thread, pick again
+            if (evict(victim)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Evicts the specified page and puts its frame on the free list.
+     *
+     * @return false if the page can't be evicted (anymore)
+     */
+    private boolean evict(PageId victim) {
+        Frame frame = pageTable.get(victim);
+        if (frame != null && victim.equals(frame.getPageId()) && claimForEviction(frame)) {
+            metrics.increment(METRIC_EVICTIONS);
+            demote(frame);
+            release(frame);
+            freeFrames.add(frame);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Hands the hits marked on the frames since the last call to the
+     * eviction policy, in the order the pages were first hit. Pages that
+     * left the pool meanwhile are skipped, so the policy never learns about
+     * a page it has already been told to forget.
+     */
+    private void recordReferences() {
+        PageId pid;
+        while ((pid = referencedPages.poll()) != null) {
+            Frame frame = pageTable.get(pid);
+            if (frame == null) {
+                continue;
+            }
+            synchronized (frame) {
+                // release() removes the page from the policy under the same monitor
+                if (frame.getState() == Frame.VALID && pid.equals(frame.getPageId())) {
+                    frame.clearReferenced();
+                    evictionPolicy.recordAccess(pid);
+                }
+            }
+        }
+    }
+
+    /**
+     * Chooses the next page to evict. With table quotas in the catalog, pages
+     * of lower priority tables go first and tables keep their reserved pages
+     * while any other page can be evicted.
+     *
+     * @return the victim, or null if no page is evictable
+     */
+    private PageId chooseVictim() {
+        recordReferences();
+        Catalog catalog = Database.getCatalog();
+        if (!catalog.hasBufferQuotas()) {
+            return evictionPolicy.chooseVictim(this::isEvictable);
+        }
+        for (BufferQuota.Priority priority : BufferQuota.Priority.values()) {
+            PageId victim = evictionPolicy.chooseVictim(pid -> {
+                BufferQuota quota = catalog.getBufferQuota(pid.getTableId());
+                return quota.getPriority().compareTo(priority) <= 0
+                        && getCachedPageCount(pid.getTableId()) > quota.getReservedPages()
+                        && isEvictable(pid);
+            });
+            if (victim != null) {
+                return victim;
+            }
+        }
+        // reservations give way rather than failing the request
+        return evictionPolicy.chooseVictim(this::isEvictable);
+    }
+
+    /**
+     * Makes room for a new page of the table of pid if the table already
+     * holds the most pages its quota allows, by evicting one of its own.
+     */
+    private void enforceCap(PageId pid) {
+        int tableId = pid.getTableId();
+        int maxPages = Database.getCatalog().getBufferQuota(tableId).getMaxPages();
+        if (maxPages == 0 || getCachedPageCount(tableId) < maxPages) {
+            return;
+        }
+        recordReferences();
+        PageId victim = evictionPolicy.chooseVictim(p -> p.getTableId() == tableId && isEvictable(p));
+        if (victim != null) {
+            evict(victim);
+        }
+    }
+
+    private static boolean isDirtiedBy(Page page, TransactionId tid) {
+        TransactionId dirtier = page.isDirty();
+        return dirtier != null && dirtier.equals(tid);
+    }
+
+    /**
+     * @return true if the specified page is cached, clean, written and not in use
+     */
+    private boolean isEvictable(PageId pid) {
+        Frame frame = pageTable.get(pid);
+        return frame != null && pid.equals(frame.getPageId()) && frame.isEvictable() && !writer.isPending(pid);
+    }
+
+    /**
+     * Claims a frame for eviction, unless its page is in use, dirty or has
+     * a committed image the writer didn't write yet.
+     */
+    private boolean claimForEviction(Frame frame) {
+        if (!frame.tryClaimForEviction()) {
+            return false;
+        }
+        if (writer.isPending(frame.getPageId())) {
+            frame.compareAndSetState(Frame.EVICTING, Frame.VALID);
+            return false;
+        }
+        return true;
     }
 
 }
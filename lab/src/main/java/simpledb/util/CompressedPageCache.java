@@ -0,0 +1,158 @@
+package simpledb.util;
+
+import simpledb.model.pageid.PageId;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * CompressedPageCache is the second tier of the BufferPool: it keeps
+ * deflated images of clean pages evicted from the pool, so that a later miss
+ * on such a page inflates the image instead of reading the disk.
+ * <p>
+ * Images are compressed with the fastest Deflater level, outside of the
+ * cache's lock. The cache holds at most capacityBytes of compressed images
+ * and drops the least recently stored ones first; images that don't shrink
+ * are not stored. An image leaves the cache when its page is taken back into
+ * the pool, so a page is never both in the pool and in this cache and the
+ * image can't go stale.
+ *
+ * @Threadsafe
+ */
+class CompressedPageCache {
+
+    private static final ThreadLocal<Deflater> DEFLATER = ThreadLocal.withInitial(() -> new Deflater(Deflater.BEST_SPEED));
+    private static final ThreadLocal<Inflater> INFLATER = ThreadLocal.withInitial(Inflater::new);
+
+    /** A deflated page image. */
+    private static class Image {
+        private final byte[] compressed;
+        private final int length;
+
+        Image(byte[] compressed, int length) {
+            this.compressed = compressed;
+            this.length = length;
+        }
+    }
+
+    private final LinkedHashMap<PageId, Image> images;
+    private long capacityBytes;
+    private long usedBytes;
+
+    CompressedPageCache(long capacityBytes) {
+        this.images = new LinkedHashMap<>();
+        this.capacityBytes = Math.max(0, capacityBytes);
+        this.usedBytes = 0;
+    }
+
+    synchronized long getCapacityBytes() {
+        return capacityBytes;
+    }
+
+    /**
+     * Changes the capacity, dropping images until the cache fits into it.
+     */
+    synchronized void setCapacityBytes(long capacityBytes) {
+        this.capacityBytes = Math.max(0, capacityBytes);
+        trim();
+    }
+
+    /**
+     * @return the bytes of compressed images held
+     */
+    synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    /**
+     * @return the number of images held
+     */
+    synchronized int size() {
+        return images.size();
+    }
+
+    /**
+     * Stores a compressed copy of a clean page image, replacing the image
+     * stored for the page before.
+     *
+     * @return true if the image was stored, false if the cache is disabled
+     *     or the image doesn't compress
+     */
+    boolean put(PageId pid, byte[] data) {
+        if (getCapacityBytes() == 0) {
+            return false;
+        }
+        Deflater deflater = DEFLATER.get();
+        deflater.reset();
+        deflater.setInput(data);
+        deflater.finish();
+        byte[] buf = new byte[data.length];
+        int n = deflater.deflate(buf);
+        if (!deflater.finished() || n >= data.length) {
+            return false;
+        }
+        byte[] compressed = new byte[n];
+        System.arraycopy(buf, 0, compressed, 0, n);
+
+        synchronized (this) {
+            if (compressed.length > capacityBytes) {
+                return false;
+            }
+            remove(pid);
+            images.put(pid, new Image(compressed, data.length));
+            usedBytes += compressed.length;
+            trim();
+        }
+        return true;
+    }
+
+    /**
+     * Removes the image of the specified page from the cache.
+     *
+     * @return the inflated image, or null if the cache holds none
+     */
+    byte[] take(PageId pid) {
+        Image image;
+        synchronized (this) {
+            image = images.remove(pid);
+            if (image == null) {
+                return null;
+            }
+            usedBytes -= image.compressed.length;
+        }
+        Inflater inflater = INFLATER.get();
+        inflater.reset();
+        inflater.setInput(image.compressed);
+        byte[] data = new byte[image.length];
+        try {
+            if (inflater.inflate(data) != image.length) {
+                return null;
+            }
+        } catch (DataFormatException e) {
+            return null;
+        }
+        return data;
+    }
+
+    /**
+     * Drops the image of the specified page, if any.
+     */
+    synchronized void remove(PageId pid) {
+        Image old = images.remove(pid);
+        if (old != null) {
+            usedBytes -= old.compressed.length;
+        }
+    }
+
+    private void trim() {
+        Iterator<Map.Entry<PageId, Image>> it = images.entrySet().iterator();
+        while (usedBytes > capacityBytes && it.hasNext()) {
+            usedBytes -= it.next().getValue().compressed.length;
+            it.remove();
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package simpledb.util;
+
+import simpledb.log.Debug;
+import simpledb.model.dbfile.DbFile;
+import simpledb.model.page.Page;
+import simpledb.model.pageid.PageId;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DirtyPageWriter writes the images of committed pages to disk on a
+ * background thread.
+ * <p>
+ * Committing transactions hand in an image of every page they changed as
+ * one {@link Batch}. A commit waits for its own batch only, never for the
+ * pages of other transactions, and the high-water mark lets it return
+ * earlier while at most highWaterMark images are unwritten. A batch reaches the writer as a whole when it is
+ * submitted, so the pages of a commit are never split across writes. The
+ * writer drains all submitted batches at once, sorted by page number per
+ * file, and hands them to {@link simpledb.model.dbfile.DbFile#writePages}
+ * so that adjacent pages are coalesced into single writes. A page
+ * committed again before its previous image was written is written once,
+ * with its latest image.
+ * <p>
+ * With a high-water mark of 0 a commit returns once its pages are on
+ * disk, as with synchronous writes, but concurrent commits still share
+ * writes. A higher mark lets commits return before their pages are written,
+ * which loses those commits if the process dies before the writer catches up.
+ *
+ * @Threadsafe
+ */
+class DirtyPageWriter {
+
+    /** Pause before retrying after a failed write. */
+    private static final long RETRY_MILLIS = 100;
+
+    /** A page image and the file it belongs to. */
+    private static class PendingWrite {
+        private final DbFile file;
+        private final Page image;
+
+        PendingWrite(DbFile file, Page image) {
+            this.file = file;
+            this.image = image;
+        }
+    }
+
+    /** The page images of one commit, handed to the writer together. */
+    static class Batch {
+        private final List<PendingWrite> writes = new ArrayList<>();
+        // 以下两个字段由writer的监视器保护
+        private boolean submitted = false;
+        private boolean written = false;
+    }
+
+    // 所有未写出的页，包括尚未提交的批次中的页
+    private final ConcurrentHashMap<PageId, PendingWrite> pending;
+    // 已提交、等待写出的批次，由this的监视器保护
+    private final List<Batch> submitted;
+    private final ThreadPoolExecutor executor;
+    private volatile int highWaterMark;
+    private boolean scheduled;
+    private IOException failure;
+
+    DirtyPageWriter(int highWaterMark) {
+        this.pending = new ConcurrentHashMap<>();
+        this.submitted = new ArrayList<>();
+        this.highWaterMark = highWaterMark;
+        this.scheduled = false;
+        // the idle writer thread times out, so discarded pools don't leak threads
+        this.executor = new ThreadPoolExecutor(1, 1, 1, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread t = new Thread(r, "BufferPool-writer");
+            t.setDaemon(true);
+            return t;
+        });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    int getHighWaterMark() {
+        return highWaterMark;
+    }
+
+    void setHighWaterMark(int highWaterMark) {
+        this.highWaterMark = Math.max(0, highWaterMark);
+        synchronized (this) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * @return the number of page images not written yet
+     */
+    int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * @return true if an image of the specified page is not written yet
+     */
+    boolean isPending(PageId pid) {
+        return pending.containsKey(pid);
+    }
+
+    /**
+     * @return a new, empty batch for the pages of one commit
+     */
+    Batch newBatch() {
+        return new Batch();
+    }
+
+    /**
+     * Adds the specified page image to a batch, replacing an unwritten older
+     * image of the same page. The page counts as pending right away, but it
+     * is only written once the batch is submitted.
+     *
+     * @param batch the batch of the committing transaction
+     * @param file the file the page belongs to
+     * @param image the page image to write
+     */
+    void enqueue(Batch batch, DbFile file, Page image) {
+        PendingWrite write = new PendingWrite(file, image);
+        pending.put(image.getId(), write);
+        batch.writes.add(write);
+    }
+
+    /**
+     * Hands the images of a batch to the writer in one step and starts the
+     * writer unless it is running already. Submitting a batch again does
+     * nothing.
+     */
+    synchronized void submit(Batch batch) {
+        if (batch.submitted) {
+            return;
+        }
+        batch.submitted = true;
+        if (batch.writes.isEmpty()) {
+            batch.written = true;
+        } else {
+            submitted.add(batch);
+        }
+        if (!scheduled && !submitted.isEmpty()) {
+            scheduled = true;
+            executor.execute(this::drain);
+        }
+    }
+
+    /**
+     * Blocks until the pages of a submitted batch are written, or until at
+     * most highWaterMark page images are unwritten, whichever comes first.
+     * Other commits can delay the return only through the high-water mark,
+     * and never past the write of this batch.
+     *
+     * @throws IOException if the writer failed to write pages meanwhile
+     */
+    void awaitCommitted(Batch batch) throws IOException {
+        awaitUntil(() -> batch.written || pending.size() <= highWaterMark);
+    }
+
+    /**
+     * Blocks until the specified page has no unwritten image.
+     */
+    void awaitWritten(PageId pid) throws IOException {
+        awaitUntil(() -> !pending.containsKey(pid));
+    }
+
+    /**
+     * Blocks until every queued page image is written.
+     */
+    void flush() throws IOException {
+        awaitUntil(pending::isEmpty);
+    }
+
+    private interface Condition {
+        boolean holds();
+    }
+
+    private synchronized void awaitUntil(Condition condition) throws IOException {
+        while (!condition.holds()) {
+            if (failure != null) {
+                throw new IOException("DirtyPageWriter: write failed: " + failure.getMessage(), failure);
+            }
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("DirtyPageWriter: interrupted while waiting for writes");
+            }
+        }
+    }
+
+    /**
+     * Writes submitted batches until there are none left.
+     */
+    private void drain() {
+        // the images taken from the submitted batches, kept for a retry if the write fails
+        LinkedHashMap<PageId, PendingWrite> writes = null;
+        List<Batch> taken = new ArrayList<>();
+        while (true) {
+            synchronized (this) {
+                for (Batch batch : submitted) {
+                    if (writes == null) {
+                        writes = new LinkedHashMap<>();
+                    }
+                    for (PendingWrite write : batch.writes) {
+                        // a later batch holds the newer image
+                        writes.put(write.image.getId(), write);
+                    }
+                }
+                taken.addAll(submitted);
+                submitted.clear();
+                if (writes == null) {
+                    scheduled = false;
+                    notifyAll();
+                    return;
+                }
+            }
+            try {
+                writeBatch(writes.values());
+                writes = null;
+                synchronized (this) {
+                    for (Batch batch : taken) {
+                        batch.written = true;
+                    }
+                    taken.clear();
+                    failure = null;
+                    notifyAll();
+                }
+            } catch (IOException | RuntimeException e) {
+                Debug.log("DirtyPageWriter: write failed: %s", e.getMessage());
+                synchronized (this) {
+                    failure = e instanceof IOException ? (IOException) e : new IOException(e);
+                    notifyAll();
+                    try {
+                        wait(RETRY_MILLIS);
+                    } catch (InterruptedException ie) {
+                        // the next submit retries the unwritten batches
+                        submitted.addAll(0, taken);
+                        scheduled = false;
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    private void writeBatch(Collection<PendingWrite> batch) throws IOException {
+        HashMap<DbFile, List<PendingWrite>> byFile = new HashMap<>();
+        for (PendingWrite write : batch) {
+            byFile.computeIfAbsent(write.file, k -> new ArrayList<>()).add(write);
+        }
+        for (Map.Entry<DbFile, List<PendingWrite>> e : byFile.entrySet()) {
+            List<PendingWrite> writes = e.getValue();
+            writes.sort(Comparator.comparingInt(w -> w.image.getId().pageNumber()));
+            List<Page> images = new ArrayList<>(writes.size());
+            for (PendingWrite write : writes) {
+                images.add(write.image);
+            }
+            e.getKey().writePages(images);
+            for (PendingWrite write : writes) {
+                // a newer image queued meanwhile stays pending
+                pending.remove(write.image.getId(), write);
+            }
+        }
+    }
+}
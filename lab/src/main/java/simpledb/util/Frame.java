@@ -0,0 +1,201 @@
+package simpledb.util;
+
+import simpledb.model.page.Page;
+import simpledb.model.pageid.PageId;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A slot of the BufferPool's frame table holding at most one page.
+ * <p>
+ * A frame is FREE, LOADING while the one thread that missed on its page
+ * reads it from disk, VALID once the page can be used, and EVICTING while
+ * the thread that claimed it for eviction takes it out of the page table.
+ * State changes are compare-and-set, so exactly one thread wins the right
+ * to load or evict a frame without any global lock.
+ * <p>
+ * The pin count tells eviction that a frame is in use. A pinner pins the
+ * frame before it checks the state, an evictor claims the frame before it
+ * checks the pin count and backs off if the frame is pinned, so a pinner
+ * either sees EVICTING and retries, or its pin stops the eviction. Freeing
+ * a frame drops its pins, which only happens when a pinned page is
+ * discarded. An unpin names the page it pinned and is ignored once the
+ * frame holds another page, or another copy of the same page, so a late
+ * unpin never takes away a pin of the frame's next page.
+ * <p>
+ * A hit marks the frame as referenced; the BufferPool passes the marked
+ * pages on to its eviction policy before choosing a victim, so a hit
+ * writes nothing shared unless the mark was clear.
+ * <p>
+ * Threads waiting for a page that is still LOADING wait on the frame's
+ * monitor, which the loader notifies once it is done.
+ * <p>
+ * The frames of an off-heap pool own a buffer in the {@link FrameArena}
+ * that their pages are read into; the page is detached from the buffer
+ * before the frame is reused.
+ */
+class Frame {
+
+    static final int FREE = 0;
+    static final int LOADING = 1;
+    static final int VALID = 2;
+    static final int EVICTING = 3;
+
+    private final AtomicInteger state;
+    private final AtomicInteger pinCount;
+    private final AtomicBoolean referenced;
+    private final ByteBuffer buffer;
+    private volatile PageId pid;
+    private volatile Page page;
+
+    /**
+     * @param buffer the buffer pages are read into, or null to let the file
+     *     allocate a buffer per page
+     */
+    Frame(ByteBuffer buffer) {
+        this.state = new AtomicInteger(FREE);
+        this.pinCount = new AtomicInteger(0);
+        this.referenced = new AtomicBoolean(false);
+        this.buffer = buffer;
+    }
+
+    ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    int getState() {
+        return state.get();
+    }
+
+    boolean compareAndSetState(int expect, int update) {
+        return state.compareAndSet(expect, update);
+    }
+
+    PageId getPageId() {
+        return pid;
+    }
+
+    Page getPage() {
+        return page;
+    }
+
+    int getPinCount() {
+        return pinCount.get();
+    }
+
+    /**
+     * Pins the frame if it holds the specified page. The pin is taken
+     * before the state is checked, see above, and taken back under the
+     * monitor if the check fails, so free can't run in between and the
+     * undo never takes away a pin of the frame's next page.
+     *
+     * @return true if the page is pinned
+     */
+    synchronized boolean pin(Page expected) {
+        pinCount.incrementAndGet();
+        if (state.get() == VALID && page == expected) {
+            return true;
+        }
+        unpin();
+        return false;
+    }
+
+    void unpin() {
+        // never below zero: the pins of a discarded page were dropped already
+        pinCount.getAndUpdate(n -> n > 0 ? n - 1 : 0);
+    }
+
+    /**
+     * Releases a pin of the specified page, if the frame still holds it.
+     * Synchronized with free and finishLoading, so the page can't change
+     * between the check and the unpin.
+     */
+    synchronized void unpin(Page pinned) {
+        if (page == pinned) {
+            unpin();
+        }
+    }
+
+    /**
+     * Marks the page of the frame as accessed.
+     *
+     * @return true if the mark was clear, the caller then queues the page
+     *     for the eviction policy
+     */
+    boolean markReferenced() {
+        // 已标记时只读不写，热点页的命中不会争用同一缓存行
+        return !referenced.get() && referenced.compareAndSet(false, true);
+    }
+
+    void clearReferenced() {
+        referenced.set(false);
+    }
+
+    /**
+     * Claims a FREE frame for loading the specified page.
+     */
+    void startLoading(PageId pid) {
+        referenced.set(false);
+        this.page = null;
+        this.pid = pid;
+        state.set(LOADING);
+    }
+
+    /**
+     * Publishes the loaded page, or frees the frame again if page is null,
+     * and wakes up the threads waiting for it.
+     */
+    synchronized void finishLoading(Page page) {
+        if (page == null) {
+            this.pid = null;
+        }
+        this.page = page;
+        state.set(page == null ? FREE : VALID);
+        notifyAll();
+    }
+
+    /**
+     * Frees a frame claimed for eviction.
+     */
+    synchronized void free() {
+        this.page = null;
+        this.pid = null;
+        pinCount.set(0);
+        state.set(FREE);
+    }
+
+    /**
+     * Blocks while the frame is loading the specified page.
+     */
+    synchronized void awaitLoaded(PageId pid) throws InterruptedException {
+        while (state.get() == LOADING && pid.equals(this.pid)) {
+            wait();
+        }
+    }
+
+    /**
+     * @return true if the frame holds a clean page that nobody has pinned
+     */
+    boolean isEvictable() {
+        Page p = page;
+        return state.get() == VALID && pinCount.get() == 0 && p != null && p.isDirty() == null;
+    }
+
+    /**
+     * Claims a VALID frame for eviction. Fails if the frame is in another
+     * state, is pinned, or holds a dirty page.
+     */
+    boolean tryClaimForEviction() {
+        if (!state.compareAndSet(VALID, EVICTING)) {
+            return false;
+        }
+        Page p = page;
+        if (pinCount.get() > 0 || p == null || p.isDirty() != null) {
+            state.set(VALID);
+            return false;
+        }
+        return true;
+    }
+}
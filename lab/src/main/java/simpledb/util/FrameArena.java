@@ -0,0 +1,48 @@
+package simpledb.util;
+
+import java.nio.ByteBuffer;
+
+/**
+ * FrameArena allocates the page buffers of off-heap BufferPool frames in
+ * a few large direct ByteBuffer slabs. Page bytes in the arena are not
+ * Java objects, so the garbage collector neither copies nor scans them,
+ * however large the pool grows.
+ * <p>
+ * A direct buffer can't exceed 2GB, so the arena is split into slabs of at
+ * most {@link #MAX_SLAB_BYTES}; each frame buffer lies within one slab.
+ */
+class FrameArena {
+
+    /** Upper bound of the size of one slab. */
+    static final int MAX_SLAB_BYTES = 256 * 1024 * 1024;
+
+    private final ByteBuffer[] slabs;
+    private final int framesPerSlab;
+    private final int pageSize;
+
+    /**
+     * @param numFrames the number of frame buffers to allocate
+     * @param pageSize the size of one frame buffer
+     */
+    FrameArena(int numFrames, int pageSize) {
+        this.pageSize = pageSize;
+        this.framesPerSlab = Math.max(1, MAX_SLAB_BYTES / pageSize);
+        int numSlabs = (numFrames + framesPerSlab - 1) / framesPerSlab;
+        this.slabs = new ByteBuffer[numSlabs];
+        for (int i = 0; i < numSlabs; i++) {
+            int frames = Math.min(framesPerSlab, numFrames - i * framesPerSlab);
+            slabs[i] = ByteBuffer.allocateDirect(frames * pageSize);
+        }
+    }
+
+    /**
+     * @return the buffer of the specified frame, exactly one page long
+     */
+    ByteBuffer frameBuffer(int index) {
+        ByteBuffer slab = slabs[index / framesPerSlab].duplicate();
+        int offset = (index % framesPerSlab) * pageSize;
+        slab.position(offset);
+        slab.limit(offset + pageSize);
+        return slab.slice();
+    }
+}
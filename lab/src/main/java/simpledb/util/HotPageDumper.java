@@ -0,0 +1,134 @@
+package simpledb.util;
+
+import simpledb.log.Debug;
+import simpledb.model.pageid.HeapPageId;
+import simpledb.model.pageid.PageId;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * HotPageDumper saves the ids of the pages resident in a BufferPool to a
+ * small file, most recently used first, so that a restarted pool can read
+ * the same pages back in before queries ask for them.
+ * <p>
+ * The dump holds the int {@link #MAGIC}, the number of pages, and the table
+ * id and page number of every page. It is written to a temporary file that
+ * is then renamed over the previous dump, so a crash while dumping leaves
+ * the previous dump intact.
+ *
+ * @Threadsafe
+ */
+class HotPageDumper {
+
+    /** The first int of a dump, "SDBH". */
+    static final int MAGIC = 0x53444248;
+
+    private final Supplier<List<PageId>> residentPages;
+    private ScheduledThreadPoolExecutor executor;
+    private ScheduledFuture<?> dumps;
+
+    /**
+     * @param residentPages lists the resident pages, most recently used first
+     */
+    HotPageDumper(Supplier<List<PageId>> residentPages) {
+        this.residentPages = residentPages;
+    }
+
+    /**
+     * Dumps the resident pages to the specified file every periodMillis
+     * milliseconds, replacing the periodic dumps started before.
+     */
+    synchronized void start(File file, long periodMillis) {
+        if (dumps != null) {
+            dumps.cancel(false);
+        }
+        if (executor == null) {
+            executor = new ScheduledThreadPoolExecutor(1, r -> {
+                Thread t = new Thread(r, "BufferPool-page-dumper");
+                t.setDaemon(true);
+                return t;
+            });
+            executor.setRemoveOnCancelPolicy(true);
+        }
+        dumps = executor.scheduleWithFixedDelay(() -> {
+            try {
+                dump(file);
+            } catch (IOException e) {
+                // the previous dump is still in place, the next period tries again
+                Debug.log("HotPageDumper: dump to %s failed: %s", file, e.getMessage());
+            }
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the periodic dumps and lets the dumping thread exit. A dump
+     * already running is finished.
+     */
+    synchronized void stop() {
+        if (dumps != null) {
+            dumps.cancel(false);
+            dumps = null;
+        }
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+    }
+
+    /**
+     * Dumps the resident pages to the specified file now.
+     */
+    void dump(File file) throws IOException {
+        List<PageId> pages = residentPages.get();
+        File temp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(pages.size());
+            for (PageId pid : pages) {
+                out.writeInt(pid.getTableId());
+                out.writeInt(pid.pageNumber());
+            }
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads a dump written by {@link #dump}.
+     *
+     * @return the dumped pages, most recently used first; empty if the file
+     *     doesn't exist
+     * @throws IOException if the file isn't a dump
+     */
+    static List<PageId> read(File file) throws IOException {
+        ArrayList<PageId> pages = new ArrayList<>();
+        if (!file.exists()) {
+            return pages;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("HotPageDumper: " + file + " is not a page dump");
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                int tableId = in.readInt();
+                pages.add(new HeapPageId(tableId, in.readInt()));
+            }
+        }
+        return pages;
+    }
+}
@@ -0,0 +1,118 @@
+package simpledb.util;
+
+import simpledb.model.Database;
+import simpledb.model.pageid.HeapPageId;
+import simpledb.model.pageid.PageId;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+
+/**
+ * ReadAhead watches the page numbers a single file iterator asks for and,
+ * once the accesses look sequential, asks the BufferPool to load the next
+ * pages of the file in the background, as one batch per window.
+ * <p>
+ * The window starts at {@link #MIN_WINDOW} pages and adapts to how useful
+ * the read-ahead turns out to be: it doubles, up to the pool's
+ * {@link BufferPool#getMaxReadAheadPages()}, every time a prefetched page is
+ * found cached or still loading when the scan reaches it, and halves when a
+ * prefetched page has already been evicted again by then.
+ * <p>
+ * A ReadAhead belongs to a single iterator and is not thread safe.
+ */
+public class ReadAhead {
+
+    /** Number of consecutive sequential accesses before read-ahead starts. */
+    public static final int SEQUENTIAL_THRESHOLD = 2;
+
+    public static final int MIN_WINDOW = 1;
+
+    private final int tableId;
+    private final int numPages;
+    private final BufferAccessStrategy strategy;
+    private final HashSet<Integer> prefetched;
+
+    private int lastPgNo;
+    private int sequentialCount;
+    private int window;
+    // 已提交预读的最大页号，避免重复提交
+    private int prefetchedUpTo;
+
+    /**
+     * @param tableId the table the iterator reads
+     * @param numPages the number of pages of the table
+     * @param strategy the access strategy of the iterator, or null
+     */
+    public ReadAhead(int tableId, int numPages, BufferAccessStrategy strategy) {
+        this.tableId = tableId;
+        this.numPages = numPages;
+        this.strategy = strategy;
+        this.prefetched = new HashSet<>();
+        reset();
+    }
+
+    /**
+     * Forget the access history, e.g. when the iterator is rewound.
+     */
+    public void reset() {
+        this.lastPgNo = -1;
+        this.sequentialCount = 0;
+        this.window = MIN_WINDOW;
+        this.prefetchedUpTo = -1;
+        this.prefetched.clear();
+    }
+
+    /**
+     * Record that the iterator is about to fetch the specified page and
+     * issue background reads for the following pages if the scan is
+     * sequential. Must be called before the page itself is requested.
+     *
+     * @param pgNo the page number about to be fetched
+     */
+    public void onAccess(int pgNo) {
+        BufferPool bufferPool = Database.getBufferPool();
+        if (prefetched.remove(pgNo)) {
+            // a page still being read arrived in time as far as the window is concerned
+            if (bufferPool.isCachedOrLoading(new HeapPageId(tableId, pgNo))) {
+                window = Math.min(window * 2, maxWindow(bufferPool));
+            } else {
+                window = Math.max(MIN_WINDOW, window / 2);
+            }
+        }
+
+        if (pgNo == lastPgNo + 1) {
+            sequentialCount++;
+        } else {
+            sequentialCount = 0;
+            prefetched.clear();
+            prefetchedUpTo = pgNo;
+        }
+        lastPgNo = pgNo;
+
+        int limit = maxWindow(bufferPool);
+        if (sequentialCount < SEQUENTIAL_THRESHOLD || limit == 0) {
+            return;
+        }
+        window = Math.min(window, limit);
+        int last = Math.min(pgNo + window, numPages - 1);
+        ArrayList<PageId> pids = new ArrayList<>();
+        for (int next = Math.max(pgNo, prefetchedUpTo) + 1; next <= last; next++) {
+            pids.add(new HeapPageId(tableId, next));
+            prefetched.add(next);
+        }
+        if (!pids.isEmpty()) {
+            // 连续的页一次读入
+            bufferPool.prefetchPages(pids, strategy);
+        }
+        prefetchedUpTo = Math.max(prefetchedUpTo, last);
+    }
+
+    private int maxWindow(BufferPool bufferPool) {
+        int limit = bufferPool.getMaxReadAheadPages();
+        if (strategy != null) {
+            // leave room in the ring for the page being read
+            limit = Math.min(limit, strategy.getRingSize() / 2);
+        }
+        return limit;
+    }
+}
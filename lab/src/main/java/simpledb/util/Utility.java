@@ -2,6 +2,7 @@ package simpledb.util;
 
 import simpledb.enums.Type;
 import simpledb.model.*;
+import simpledb.model.dbfile.FreeSpaceMap;
 import simpledb.model.dbfile.HeapFile;
 import simpledb.model.field.IntField;
 import simpledb.model.page.HeapPage;
@@ -10,6 +11,7 @@ import simpledb.model.pageid.HeapPageId;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.UUID;
 
@@ -121,6 +123,7 @@ public class Utility {
         FileOutputStream fos = new FileOutputStream(f);
         fos.write(new byte[0]);
         fos.close();
+        Files.deleteIfExists(FreeSpaceMap.sidecarFile(f).toPath());
 
         HeapFile hf = openHeapFile(cols, f);
         HeapPageId pid = new HeapPageId(hf.getId(), 0);
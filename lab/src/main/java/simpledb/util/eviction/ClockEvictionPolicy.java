@@ -0,0 +1,96 @@
+package simpledb.util.eviction;
+
+import simpledb.model.pageid.PageId;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * CLOCK (second chance) eviction. Every resident page owns a slot on a
+ * circular list together with a reference bit that is set on access. The
+ * clock hand sweeps the slots, clearing reference bits, and stops at the
+ * first evictable page whose bit is already clear.
+ */
+public class ClockEvictionPolicy implements EvictionPolicy {
+
+    private final ArrayList<PageId> slots;
+    private final ArrayList<Boolean> referenced;
+    private final HashMap<PageId, Integer> slotOfPage;
+    private final ArrayDeque<Integer> freeSlots;
+    private int hand;
+
+    public ClockEvictionPolicy() {
+        this.slots = new ArrayList<>();
+        this.referenced = new ArrayList<>();
+        this.slotOfPage = new HashMap<>();
+        this.freeSlots = new ArrayDeque<>();
+        this.hand = 0;
+    }
+
+    @Override
+    public synchronized void recordAccess(PageId pid) {
+        Integer slot = slotOfPage.get(pid);
+        if (slot == null) {
+            if (freeSlots.isEmpty()) {
+                slot = slots.size();
+                slots.add(pid);
+                referenced.add(Boolean.TRUE);
+            } else {
+                slot = freeSlots.poll();
+                slots.set(slot, pid);
+            }
+            slotOfPage.put(pid, slot);
+        }
+        referenced.set(slot, Boolean.TRUE);
+    }
+
+    @Override
+    public synchronized void remove(PageId pid) {
+        Integer slot = slotOfPage.remove(pid);
+        if (slot != null) {
+            slots.set(slot, null);
+            referenced.set(slot, Boolean.FALSE);
+            freeSlots.add(slot);
+        }
+    }
+
+    @Override
+    public synchronized PageId chooseVictim(Predicate<PageId> evictable) {
+        int n = slots.size();
+        // 第一圈清除引用位，第二圈必然能找到引用位为0的可淘汰页
+        for (int i = 0; i < 2 * n; i++) {
+            int slot = hand;
+            hand = (hand + 1) % n;
+            PageId pid = slots.get(slot);
+            if (pid == null || !evictable.test(pid)) {
+                continue;
+            }
+            if (referenced.get(slot)) {
+                referenced.set(slot, Boolean.FALSE);
+            } else {
+                return pid;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public synchronized List<PageId> pagesByRecency() {
+        // 引用位为1的页在前；其余按指针扫过的先后，刚被扫过的页离下次淘汰最远
+        ArrayList<PageId> pages = new ArrayList<>(slotOfPage.size());
+        ArrayList<PageId> unreferenced = new ArrayList<>();
+        int n = slots.size();
+        for (int i = 1; i <= n; i++) {
+            int slot = ((hand - i) % n + n) % n;
+            PageId pid = slots.get(slot);
+            if (pid != null) {
+                (referenced.get(slot) ? pages : unreferenced).add(pid);
+            }
+        }
+        pages.addAll(unreferenced);
+        return pages;
+    }
+}
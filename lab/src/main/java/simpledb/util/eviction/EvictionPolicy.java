@@ -0,0 +1,58 @@
+package simpledb.util.eviction;
+
+import simpledb.model.pageid.PageId;
+import simpledb.util.BufferPool;
+
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * EvictionPolicy decides which resident page the BufferPool gives up when
+ * it needs room for a new one. The BufferPool reports every page access and
+ * every page that leaves the pool; the policy only keeps the bookkeeping it
+ * needs to rank the resident pages.
+ * <p>
+ * Implementations must be thread safe, the BufferPool calls recordAccess
+ * from concurrent loads and evictions.
+ *
+ * @see BufferPool
+ */
+public interface EvictionPolicy {
+
+    /**
+     * Record that the specified page was accessed. Called when a page is
+     * loaded into the pool and for its later hits, which the BufferPool
+     * batches: the pages hit since the last victim was chosen are reported
+     * once each, in the order of their first hit, before the next one is
+     * chosen.
+     *
+     * @param pid the id of the accessed page
+     */
+    void recordAccess(PageId pid);
+
+    /**
+     * Forget the specified page, it is no longer resident in the pool.
+     *
+     * @param pid the id of the removed page
+     */
+    void remove(PageId pid);
+
+    /**
+     * Choose the page that should be evicted next. The returned page is not
+     * removed from the policy, the BufferPool calls {@link #remove} once it
+     * has actually dropped the page.
+     *
+     * @param evictable tells whether a page may be evicted right now
+     * @return the id of the victim page, or null if no resident page is evictable
+     */
+    PageId chooseVictim(Predicate<PageId> evictable);
+
+    /**
+     * Lists the resident pages from the one the policy would keep longest
+     * to the one it would evict first, which is used to save the hot pages
+     * of the pool.
+     *
+     * @return the ids of the resident pages, most recently used first
+     */
+    List<PageId> pagesByRecency();
+}
@@ -0,0 +1,50 @@
+package simpledb.util.eviction;
+
+import simpledb.model.pageid.PageId;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Least recently used eviction. Resident pages are kept in an access ordered
+ * LinkedHashMap, so the victim is the first evictable page in iteration order.
+ */
+public class LruEvictionPolicy implements EvictionPolicy {
+
+    private final LinkedHashMap<PageId, Boolean> accessOrder;
+
+    public LruEvictionPolicy() {
+        this.accessOrder = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    @Override
+    public synchronized void recordAccess(PageId pid) {
+        accessOrder.put(pid, Boolean.TRUE);
+    }
+
+    @Override
+    public synchronized void remove(PageId pid) {
+        accessOrder.remove(pid);
+    }
+
+    @Override
+    public synchronized PageId chooseVictim(Predicate<PageId> evictable) {
+        // 按访问顺序从最久未访问的页开始找
+        for (PageId pid : accessOrder.keySet()) {
+            if (evictable.test(pid)) {
+                return pid;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public synchronized List<PageId> pagesByRecency() {
+        ArrayList<PageId> pages = new ArrayList<>(accessOrder.keySet());
+        Collections.reverse(pages);
+        return pages;
+    }
+}
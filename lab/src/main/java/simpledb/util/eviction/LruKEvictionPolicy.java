@@ -0,0 +1,130 @@
+package simpledb.util.eviction;
+
+import simpledb.model.pageid.PageId;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * LRU-K eviction (O'Neil, O'Neil and Weikum). The victim is the page whose
+ * K-th most recent access lies furthest in the past. Pages referenced fewer
+ * than K times have an infinite backward K-distance and are evicted first,
+ * ordered among themselves by plain LRU, which keeps pages touched once by
+ * a scan from pushing out pages that are referenced repeatedly.
+ * <p>
+ * Victim selection is a linear pass over the resident pages, which is cheap
+ * for pool sizes in the range SimpleDb is run with.
+ */
+public class LruKEvictionPolicy implements EvictionPolicy {
+
+    public static final int DEFAULT_K = 2;
+
+    /** The last K access times of one page, kept as a ring. */
+    private static class AccessHistory {
+        private final long[] times;
+        private int count;
+
+        AccessHistory(int k) {
+            this.times = new long[k];
+            this.count = 0;
+        }
+
+        void record(long time) {
+            times[count % times.length] = time;
+            count++;
+        }
+
+        boolean hasFullHistory() {
+            return count >= times.length;
+        }
+
+        long lastAccess() {
+            return times[(count - 1) % times.length];
+        }
+
+        long kthLastAccess() {
+            return times[count % times.length];
+        }
+    }
+
+    private final int k;
+    private final HashMap<PageId, AccessHistory> histories;
+    private long clock;
+
+    public LruKEvictionPolicy() {
+        this(DEFAULT_K);
+    }
+
+    /**
+     * @param k the number of past accesses considered per page, must be at least 1
+     */
+    public LruKEvictionPolicy(int k) {
+        if (k < 1) {
+            throw new IllegalArgumentException("LruKEvictionPolicy: k must be at least 1");
+        }
+        this.k = k;
+        this.histories = new HashMap<>();
+        this.clock = 0;
+    }
+
+    @Override
+    public synchronized void recordAccess(PageId pid) {
+        AccessHistory history = histories.get(pid);
+        if (history == null) {
+            history = new AccessHistory(k);
+            histories.put(pid, history);
+        }
+        history.record(clock++);
+    }
+
+    @Override
+    public synchronized void remove(PageId pid) {
+        histories.remove(pid);
+    }
+
+    @Override
+    public synchronized PageId chooseVictim(Predicate<PageId> evictable) {
+        PageId victim = null;
+        boolean victimInfinite = false;
+        long victimTime = Long.MAX_VALUE;
+
+        for (Map.Entry<PageId, AccessHistory> entry : histories.entrySet()) {
+            AccessHistory history = entry.getValue();
+            boolean infinite = !history.hasFullHistory();
+            // 访问次数不足K次的页距离为无穷大，之间按最近一次访问时间比较
+            long time = infinite ? history.lastAccess() : history.kthLastAccess();
+
+            if (victimInfinite && !infinite) {
+                continue;
+            }
+            if (infinite == victimInfinite && time >= victimTime) {
+                continue;
+            }
+            if (!evictable.test(entry.getKey())) {
+                continue;
+            }
+            victim = entry.getKey();
+            victimInfinite = infinite;
+            victimTime = time;
+        }
+        return victim;
+    }
+
+    @Override
+    public synchronized List<PageId> pagesByRecency() {
+        // 与淘汰顺序相反：先是访问满K次的页，按第K次最近访问时间从新到旧
+        ArrayList<Map.Entry<PageId, AccessHistory>> entries = new ArrayList<>(histories.entrySet());
+        entries.sort(Comparator.comparing((Map.Entry<PageId, AccessHistory> e) -> !e.getValue().hasFullHistory())
+                .thenComparing(e -> e.getValue().hasFullHistory()
+                        ? -e.getValue().kthLastAccess() : -e.getValue().lastAccess()));
+        ArrayList<PageId> pages = new ArrayList<>(entries.size());
+        for (Map.Entry<PageId, AccessHistory> e : entries) {
+            pages.add(e.getKey());
+        }
+        return pages;
+    }
+}
@@ -0,0 +1,186 @@
+package simpledb.util.lock;
+
+import simpledb.model.TransactionId;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.ToIntFunction;
+
+/**
+ * DeadlockDetector keeps the waits-for graph of the transactions blocked in
+ * a LockManager. An edge T1 -> T2 means T1 waits for a lock T2 holds, or
+ * for a conflicting request T2 queued ahead of it.
+ * <p>
+ * Detection runs whenever a transaction blocks or its edges change: the graph is acyclic before
+ * the new edges are added, so any deadlock must be a cycle through the
+ * transaction that just blocked and a single search from it finds it. The
+ * victim picked by the VictimPolicy loses its outgoing edges at once, so the
+ * same cycle is never reported twice, and is told about its abort by
+ * {@link #consumeVictim} the next time it checks its lock.
+ *
+ * @Threadsafe
+ */
+class DeadlockDetector {
+
+    /** Width of the window deadlocksPerSecond is averaged over. */
+    static final int RATE_WINDOW_SECONDS = 10;
+
+    private final VictimPolicy policy;
+    private final ToIntFunction<TransactionId> locksHeld;
+    private final ToIntFunction<TransactionId> exclusiveLocksHeld;
+
+    private final HashMap<TransactionId, Set<TransactionId>> waitsFor;
+    private final HashSet<TransactionId> victims;
+
+    private long deadlocks;
+    /** Deadlocks per second of the last RATE_WINDOW_SECONDS seconds, indexed by second modulo the window. */
+    private final long[] bucketCounts;
+    private final long[] bucketSeconds;
+
+    DeadlockDetector(VictimPolicy policy, ToIntFunction<TransactionId> locksHeld,
+                     ToIntFunction<TransactionId> exclusiveLocksHeld) {
+        this.policy = policy;
+        this.locksHeld = locksHeld;
+        this.exclusiveLocksHeld = exclusiveLocksHeld;
+        this.waitsFor = new HashMap<>();
+        this.victims = new HashSet<>();
+        this.deadlocks = 0;
+        this.bucketCounts = new long[RATE_WINDOW_SECONDS];
+        this.bucketSeconds = new long[RATE_WINDOW_SECONDS];
+    }
+
+    /**
+     * Records that tid is blocked by the specified holders, replacing the
+     * edges recorded for it before, and breaks the deadlock this closes, if
+     * any.
+     *
+     * @return true if tid itself was chosen as the victim of a deadlock
+     */
+    synchronized boolean waitFor(TransactionId tid, Set<TransactionId> holders) {
+        Set<TransactionId> edges = new HashSet<>(holders);
+        edges.remove(tid);
+        waitsFor.put(tid, edges);
+
+        List<TransactionId> cycle = findCycle(tid);
+        if (cycle == null) {
+            return false;
+        }
+        TransactionId victim = chooseVictim(cycle);
+        recordDeadlock();
+        if (victim.equals(tid)) {
+            waitsFor.remove(tid);
+            return true;
+        }
+        waitsFor.remove(victim);
+        victims.add(victim);
+        return false;
+    }
+
+    /**
+     * Records that tid no longer waits, because it was granted its lock,
+     * aborted or completed.
+     */
+    synchronized void stopWaiting(TransactionId tid) {
+        waitsFor.remove(tid);
+        victims.remove(tid);
+    }
+
+    /**
+     * @return true if tid was chosen as a deadlock victim since it was last asked
+     */
+    synchronized boolean consumeVictim(TransactionId tid) {
+        return victims.remove(tid);
+    }
+
+    /**
+     * Depth first search for a path from start back to itself.
+     *
+     * @return the transactions on the cycle, or null if start is on none
+     */
+    private List<TransactionId> findCycle(TransactionId start) {
+        ArrayList<TransactionId> path = new ArrayList<>();
+        path.add(start);
+        return findCycle(start, start, path, new HashSet<>()) ? path : null;
+    }
+
+    private boolean findCycle(TransactionId start, TransactionId current, ArrayList<TransactionId> path,
+                              HashSet<TransactionId> visited) {
+        Set<TransactionId> next = waitsFor.get(current);
+        if (next == null) {
+            return false;
+        }
+        for (TransactionId t : next) {
+            if (t.equals(start)) {
+                return true;
+            }
+            if (visited.add(t)) {
+                path.add(t);
+                if (findCycle(start, t, path, visited)) {
+                    return true;
+                }
+                path.remove(path.size() - 1);
+            }
+        }
+        return false;
+    }
+
+    private TransactionId chooseVictim(List<TransactionId> cycle) {
+        TransactionId victim = null;
+        for (TransactionId t : cycle) {
+            if (victim == null || compare(t, victim) < 0) {
+                victim = t;
+            }
+        }
+        return victim;
+    }
+
+    /**
+     * @return a negative number if a is the better victim, a positive one if b is
+     */
+    private int compare(TransactionId a, TransactionId b) {
+        int c = 0;
+        if (policy == VictimPolicy.LEAST_WORK) {
+            c = Integer.compare(exclusiveLocksHeld.applyAsInt(a), exclusiveLocksHeld.applyAsInt(b));
+        } else if (policy == VictimPolicy.FEWEST_LOCKS) {
+            c = Integer.compare(locksHeld.applyAsInt(a), locksHeld.applyAsInt(b));
+        }
+        // 其余情况选择最年轻的事务
+        return c != 0 ? c : Long.compare(b.getId(), a.getId());
+    }
+
+    private void recordDeadlock() {
+        deadlocks++;
+        long second = System.currentTimeMillis() / 1000;
+        int bucket = (int) (second % RATE_WINDOW_SECONDS);
+        if (bucketSeconds[bucket] != second) {
+            bucketSeconds[bucket] = second;
+            bucketCounts[bucket] = 0;
+        }
+        bucketCounts[bucket]++;
+    }
+
+    /**
+     * @return the number of deadlocks detected so far
+     */
+    synchronized long getDeadlockCount() {
+        return deadlocks;
+    }
+
+    /**
+     * @return the average number of deadlocks detected per second over the
+     *     last RATE_WINDOW_SECONDS seconds
+     */
+    synchronized double getDeadlocksPerSecond() {
+        long now = System.currentTimeMillis() / 1000;
+        long total = 0;
+        for (int i = 0; i < RATE_WINDOW_SECONDS; i++) {
+            if (now - bucketSeconds[i] < RATE_WINDOW_SECONDS) {
+                total += bucketCounts[i];
+            }
+        }
+        return (double) total / RATE_WINDOW_SECONDS;
+    }
+}
@@ -0,0 +1,345 @@
+package simpledb.util.lock;
+
+import simpledb.exception.TransactionAbortedException;
+import simpledb.model.TransactionId;
+import simpledb.model.pageid.PageId;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * LockManager grants page level shared and exclusive locks to transactions.
+ * It implements the locking half of strict two-phase locking: locks are
+ * only acquired while a transaction runs and are all released together by
+ * {@link #releaseAll} when it completes.
+ * <p>
+ * The lock table is split into stripes by PageId hash, each guarded by its
+ * own monitor, so transactions locking unrelated pages never contend on a
+ * global lock. A transaction asking again for a lock it already holds is
+ * answered from its own lock set without entering the lock table at all,
+ * which keeps repeated reads of hot pages cheap.
+ * <p>
+ * Blocked requests queue up per page and are granted in arrival order: a
+ * new shared lock is not granted while an exclusive request waits ahead of
+ * it, so writers of hot pages don't starve. Upgrades go to the head of the
+ * queue, since everything queued behind waits for the upgrading holder
+ * anyway.
+ * <p>
+ * A transaction waits for its lock as long as it takes. Deadlocks are found
+ * by a {@link DeadlockDetector} when a transaction starts blocking, or when
+ * the transactions it waits for change, and the victim chosen by the
+ * {@link VictimPolicy} is aborted with a TransactionAbortedException.
+ *
+ * @Threadsafe
+ */
+public class LockManager {
+
+    public enum LockMode {
+        SHARED, EXCLUSIVE
+    }
+
+    public static final int DEFAULT_STRIPES = 64;
+
+    /**
+     * Upper bound of a single wait for a lock. A deadlock victim blocked on
+     * another stripe is not woken by the transaction that chose it, so it
+     * notices its abort after at most this long. Waking up only checks for
+     * the abort, detection runs again only if the blockers changed.
+     */
+    static final long WAIT_SLICE_MILLIS = 10;
+
+    /** A blocked lock request. */
+    private static class Request {
+        private final TransactionId tid;
+        private final LockMode mode;
+
+        Request(TransactionId tid, LockMode mode) {
+            this.tid = tid;
+            this.mode = mode;
+        }
+
+        boolean conflictsWith(Request other) {
+            return mode == LockMode.EXCLUSIVE || other.mode == LockMode.EXCLUSIVE;
+        }
+    }
+
+    /** The lock state of one page. */
+    private static class PageLock {
+        private final HashSet<TransactionId> holders = new HashSet<>();
+        private boolean exclusive = false;
+        // 阻塞的请求按到达顺序排队，升级请求排在最前
+        private final ArrayDeque<Request> queue = new ArrayDeque<>();
+
+        boolean isCompatible(TransactionId tid, LockMode mode) {
+            if (holders.isEmpty()) {
+                return true;
+            }
+            // 已经是唯一持有者，可以重入或升级为排他锁
+            if (holders.size() == 1 && holders.contains(tid)) {
+                return true;
+            }
+            return mode == LockMode.SHARED && !exclusive;
+        }
+
+        /**
+         * @return true if the queued request is compatible with the holders
+         *     and no request ahead of it conflicts with it
+         */
+        boolean isGrantable(Request request) {
+            if (!isCompatible(request.tid, request.mode)) {
+                return false;
+            }
+            for (Request ahead : queue) {
+                if (ahead == request) {
+                    break;
+                }
+                if (ahead.conflictsWith(request)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @return the transactions the queued request waits for: the
+         *     holders it is incompatible with and the conflicting requests
+         *     ahead of it
+         */
+        Set<TransactionId> blockersOf(Request request) {
+            HashSet<TransactionId> blockers = new HashSet<>();
+            if (!isCompatible(request.tid, request.mode)) {
+                blockers.addAll(holders);
+            }
+            for (Request ahead : queue) {
+                if (ahead == request) {
+                    break;
+                }
+                if (ahead.conflictsWith(request)) {
+                    blockers.add(ahead.tid);
+                }
+            }
+            blockers.remove(request.tid);
+            return blockers;
+        }
+
+        void grant(TransactionId tid, LockMode mode) {
+            holders.add(tid);
+            if (mode == LockMode.EXCLUSIVE) {
+                exclusive = true;
+            }
+        }
+    }
+
+    /** One stripe of the lock table; its monitor guards the locks it contains. */
+    private static class Stripe {
+        private final HashMap<PageId, PageLock> locks = new HashMap<>();
+    }
+
+    private final Stripe[] stripes;
+    private final ConcurrentHashMap<TransactionId, ConcurrentHashMap<PageId, LockMode>> heldLocks;
+    private final DeadlockDetector deadlockDetector;
+
+    public LockManager() {
+        this(DEFAULT_STRIPES, VictimPolicy.YOUNGEST);
+    }
+
+    /**
+     * @param numStripes the number of stripes of the lock table
+     * @param victimPolicy which transaction of a deadlock is aborted
+     */
+    public LockManager(int numStripes, VictimPolicy victimPolicy) {
+        this.stripes = new Stripe[numStripes];
+        for (int i = 0; i < numStripes; i++) {
+            stripes[i] = new Stripe();
+        }
+        this.heldLocks = new ConcurrentHashMap<>();
+        this.deadlockDetector = new DeadlockDetector(victimPolicy, this::countLocks, this::countExclusiveLocks);
+    }
+
+    private Stripe stripeOf(PageId pid) {
+        int h = pid.hashCode();
+        h ^= (h >>> 16);
+        return stripes[(h & 0x7fffffff) % stripes.length];
+    }
+
+    /**
+     * Acquire a lock on the specified page for the specified transaction,
+     * blocking until it can be granted. A transaction holding the only
+     * shared lock on a page may upgrade it to an exclusive lock.
+     *
+     * @param tid the transaction requesting the lock
+     * @param pid the page to lock
+     * @param mode the requested lock mode
+     * @throws TransactionAbortedException if the transaction was chosen as the victim of a deadlock
+     */
+    public void acquire(TransactionId tid, PageId pid, LockMode mode) throws TransactionAbortedException {
+        ConcurrentHashMap<PageId, LockMode> held = heldLocks.computeIfAbsent(tid, k -> new ConcurrentHashMap<>());
+        LockMode current = held.get(pid);
+        if (current == LockMode.EXCLUSIVE || current == mode) {
+            return;
+        }
+
+        Stripe stripe = stripeOf(pid);
+        synchronized (stripe) {
+            PageLock lock = stripe.locks.computeIfAbsent(pid, k -> new PageLock());
+            if (lock.queue.isEmpty() && lock.isCompatible(tid, mode)) {
+                lock.grant(tid, mode);
+            } else {
+                await(stripe, pid, lock, new Request(tid, mode), current != null);
+            }
+        }
+        held.put(pid, mode);
+    }
+
+    /**
+     * Queues the request and blocks until it is granted. The caller holds
+     * the monitor of the stripe.
+     *
+     * @param upgrade true if the transaction already holds a shared lock on the page
+     */
+    private void await(Stripe stripe, PageId pid, PageLock lock, Request request, boolean upgrade)
+            throws TransactionAbortedException {
+        if (upgrade) {
+            lock.queue.addFirst(request);
+        } else {
+            lock.queue.addLast(request);
+        }
+        Set<TransactionId> blockers = null;
+        try {
+            while (!lock.isGrantable(request)) {
+                if (deadlockDetector.consumeVictim(request.tid)) {
+                    throw new TransactionAbortedException();
+                }
+                // 只在开始阻塞或等待对象变化时检测死锁，而不是每次醒来都检测
+                Set<TransactionId> waitingFor = lock.blockersOf(request);
+                if (!waitingFor.equals(blockers)) {
+                    blockers = waitingFor;
+                    if (deadlockDetector.waitFor(request.tid, blockers)) {
+                        throw new TransactionAbortedException();
+                    }
+                }
+                stripe.wait(WAIT_SLICE_MILLIS);
+            }
+            lock.grant(request.tid, request.mode);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TransactionAbortedException();
+        } finally {
+            if (blockers != null) {
+                deadlockDetector.stopWaiting(request.tid);
+            }
+            lock.queue.remove(request);
+            if (lock.holders.isEmpty() && lock.queue.isEmpty()) {
+                stripe.locks.remove(pid);
+            }
+            // 队列变了，排在后面的请求可能可以授予了
+            stripe.notifyAll();
+        }
+    }
+
+    /**
+     * Release the lock the specified transaction holds on the specified page,
+     * if any.
+     */
+    public void release(TransactionId tid, PageId pid) {
+        ConcurrentHashMap<PageId, LockMode> held = heldLocks.get(tid);
+        if (held != null) {
+            held.remove(pid);
+        }
+        releaseLock(tid, pid);
+    }
+
+    private void releaseLock(TransactionId tid, PageId pid) {
+        Stripe stripe = stripeOf(pid);
+        synchronized (stripe) {
+            PageLock lock = stripe.locks.get(pid);
+            if (lock == null || !lock.holders.remove(tid)) {
+                return;
+            }
+            if (lock.holders.isEmpty()) {
+                lock.exclusive = false;
+                if (lock.queue.isEmpty()) {
+                    stripe.locks.remove(pid);
+                }
+            }
+            stripe.notifyAll();
+        }
+    }
+
+    /**
+     * Release all locks held by the specified transaction.
+     */
+    public void releaseAll(TransactionId tid) {
+        deadlockDetector.stopWaiting(tid);
+        ConcurrentHashMap<PageId, LockMode> held = heldLocks.remove(tid);
+        if (held == null) {
+            return;
+        }
+        for (PageId pid : held.keySet()) {
+            releaseLock(tid, pid);
+        }
+    }
+
+    /**
+     * @return the mode of the lock the specified transaction holds on the
+     *     specified page, or null if it holds none
+     */
+    public LockMode getLockMode(TransactionId tid, PageId pid) {
+        ConcurrentHashMap<PageId, LockMode> held = heldLocks.get(tid);
+        return held == null ? null : held.get(pid);
+    }
+
+    /** Return true if the specified transaction has a lock on the specified page */
+    public boolean holdsLock(TransactionId tid, PageId pid) {
+        return getLockMode(tid, pid) != null;
+    }
+
+    /**
+     * @return the pages the specified transaction holds locks on
+     */
+    public Set<PageId> getLockedPages(TransactionId tid) {
+        ConcurrentHashMap<PageId, LockMode> held = heldLocks.get(tid);
+        if (held == null) {
+            return Collections.emptySet();
+        }
+        return Collections.unmodifiableSet(held.keySet());
+    }
+
+    private int countLocks(TransactionId tid) {
+        ConcurrentHashMap<PageId, LockMode> held = heldLocks.get(tid);
+        return held == null ? 0 : held.size();
+    }
+
+    private int countExclusiveLocks(TransactionId tid) {
+        ConcurrentHashMap<PageId, LockMode> held = heldLocks.get(tid);
+        if (held == null) {
+            return 0;
+        }
+        int count = 0;
+        for (LockMode mode : held.values()) {
+            if (mode == LockMode.EXCLUSIVE) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the number of deadlocks detected so far
+     */
+    public long getDeadlockCount() {
+        return deadlockDetector.getDeadlockCount();
+    }
+
+    /**
+     * @return the average number of deadlocks detected per second over the
+     *     last ten seconds
+     */
+    public double getDeadlocksPerSecond() {
+        return deadlockDetector.getDeadlocksPerSecond();
+    }
+}
@@ -0,0 +1,15 @@
+package simpledb.util.lock;
+
+/**
+ * Decides which transaction of a waits-for cycle is aborted to break a
+ * deadlock. Ties are always broken in favour of aborting the youngest
+ * transaction, which has the least chance of having done much already.
+ */
+public enum VictimPolicy {
+    /** Abort the transaction that started last, i.e. has the largest TransactionId. */
+    YOUNGEST,
+    /** Abort the transaction holding the fewest exclusive locks, i.e. with the fewest pages to roll back. */
+    LEAST_WORK,
+    /** Abort the transaction holding the fewest locks. */
+    FEWEST_LOCKS
+}
@@ -0,0 +1,133 @@
+package simpledb.util.metrics;
+
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * MetricsRegistry holds named counters, gauges and histograms.
+ * <p>
+ * Counters and histograms are created on first use. While the registry is
+ * disabled, increment and record return after reading one volatile field,
+ * and callers that measure a value first, such as a latency, check
+ * {@link #isEnabled} before they do. Gauges are only evaluated when the
+ * registry is queried.
+ * <p>
+ * Registries start enabled if the system property simpledb.metrics is set,
+ * e.g. -Dsimpledb.metrics on the command line.
+ *
+ * @Threadsafe
+ */
+public class MetricsRegistry {
+
+    private volatile boolean enabled;
+    private final ConcurrentHashMap<String, LongAdder> counters;
+    private final ConcurrentHashMap<String, LongSupplier> gauges;
+    private final ConcurrentHashMap<String, Histogram> histograms;
+
+    public MetricsRegistry() {
+        this.enabled = System.getProperty("simpledb.metrics") != null;
+        this.counters = new ConcurrentHashMap<>();
+        this.gauges = new ConcurrentHashMap<>();
+        this.histograms = new ConcurrentHashMap<>();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Adds one to the specified counter, if the registry is enabled.
+     */
+    public void increment(String name) {
+        if (enabled) {
+            counters.computeIfAbsent(name, k -> new LongAdder()).increment();
+        }
+    }
+
+    /**
+     * Records a value in the specified histogram, if the registry is enabled.
+     */
+    public void record(String name, long value) {
+        if (enabled) {
+            getHistogram(name).record(value);
+        }
+    }
+
+    /**
+     * Registers a gauge, replacing the gauge registered before under the
+     * same name.
+     *
+     * @param gauge computes the current value of the gauge
+     */
+    public void registerGauge(String name, LongSupplier gauge) {
+        gauges.put(name, gauge);
+    }
+
+    /**
+     * @return the value of the specified counter, or of the specified gauge
+     *     if there is no such counter; 0 if there is neither
+     */
+    public long get(String name) {
+        LongAdder counter = counters.get(name);
+        if (counter != null) {
+            return counter.sum();
+        }
+        LongSupplier gauge = gauges.get(name);
+        return gauge == null ? 0 : gauge.getAsLong();
+    }
+
+    /**
+     * @return the specified histogram, created empty if it doesn't exist
+     */
+    public Histogram getHistogram(String name) {
+        return histograms.computeIfAbsent(name, k -> new Histogram());
+    }
+
+    /**
+     * @return the current values of all counters and gauges, by name
+     */
+    public Map<String, Long> snapshot() {
+        TreeMap<String, Long> values = new TreeMap<>();
+        for (Map.Entry<String, LongAdder> e : counters.entrySet()) {
+            values.put(e.getKey(), e.getValue().sum());
+        }
+        for (Map.Entry<String, LongSupplier> e : gauges.entrySet()) {
+            values.put(e.getKey(), e.getValue().getAsLong());
+        }
+        return values;
+    }
+
+    /**
+     * Resets all counters and histograms to zero.
+     */
+    public void reset() {
+        for (LongAdder counter : counters.values()) {
+            counter.reset();
+        }
+        for (Histogram histogram : histograms.values()) {
+            histogram.reset();
+        }
+    }
+
+    /**
+     * Prints all metrics, one per line, in name order.
+     */
+    public void dump(PrintStream out) {
+        for (Map.Entry<String, Long> e : snapshot().entrySet()) {
+            out.printf("%-48s %d%n", e.getKey(), e.getValue());
+        }
+        for (Map.Entry<String, Histogram> e : new TreeMap<>(histograms).entrySet()) {
+            Histogram h = e.getValue();
+            out.printf("%-48s count=%d mean=%.0f p50<=%d p99<=%d max<=%d%n", e.getKey(), h.getCount(), h.getMean(),
+                    h.getPercentile(50), h.getPercentile(99), h.getPercentile(100));
+        }
+    }
+}
@@ -0,0 +1,512 @@
+package simpledb;
+
+import junit.framework.JUnit4TestAdapter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import simpledb.exception.DbException;
+import simpledb.model.Database;
+import simpledb.model.DbFileIterator;
+import simpledb.model.Permissions;
+import simpledb.model.TransactionId;
+import simpledb.model.dbfile.FreeSpaceMap;
+import simpledb.model.dbfile.HeapFile;
+import simpledb.model.page.HeapPage;
+import simpledb.model.page.Page;
+import simpledb.model.pageid.HeapPageId;
+import simpledb.model.pageid.PageId;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.util.BufferPool;
+import simpledb.util.Utility;
+import simpledb.util.eviction.LruEvictionPolicy;
+import simpledb.util.lock.VictimPolicy;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class BufferPoolTest extends SimpleDbTestBase {
+
+    private static final int PAGES = 8;
+    private static final int THREADS = 8;
+
+    /** A HeapFile counting its page reads and writes, with slow reads to widen races. */
+    private static class CountingHeapFile extends HeapFile {
+        private final AtomicInteger reads = new AtomicInteger();
+        private final List<List<Integer>> writes = new CopyOnWriteArrayList<>();
+
+        CountingHeapFile(File f) {
+            super(f, Utility.getTupleDesc(1));
+        }
+
+        @Override
+        public Page readPage(PageId pid) {
+            reads.incrementAndGet();
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return super.readPage(pid);
+        }
+
+        @Override
+        public void writePages(List<Page> pages) throws IOException {
+            List<Integer> pgNos = new ArrayList<>();
+            for (Page page : pages) {
+                pgNos.add(page.getId().pageNumber());
+            }
+            writes.add(pgNos);
+            super.writePages(pages);
+        }
+    }
+
+    private CountingHeapFile hf;
+
+    /**
+     * Set up initial resources for each unit test.
+     */
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        File f = SystemTestUtil.createRandomHeapFileUnopened(1, 992 * PAGES, 1000, null, new ArrayList<>());
+        hf = new CountingHeapFile(f);
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+    }
+
+    @After
+    public void tearDown() {
+        Database.getCatalog().clear();
+    }
+
+    /**
+     * Runs body on THREADS threads started at the same time and rethrows the first failure
+     */
+    private void runConcurrently(ThrowingRunnable body) throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        ArrayList<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            Thread t = new Thread(() -> {
+                try {
+                    start.await();
+                    body.run();
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            });
+            t.start();
+            threads.add(t);
+        }
+        start.countDown();
+        for (Thread t : threads) {
+            t.join();
+        }
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+    }
+
+    private interface ThrowingRunnable {
+        void run() throws Exception;
+    }
+
+    /**
+     * Concurrent misses on the same page read it from disk only once
+     */
+    @Test
+    public void singleFlightLoad() throws Exception {
+        BufferPool bufferPool = Database.getBufferPool();
+        HeapPageId pid = new HeapPageId(hf.getId(), 0);
+        ArrayList<Page> pages = new ArrayList<>();
+        runConcurrently(() -> {
+            Page page = bufferPool.getPage(new TransactionId(), pid, Permissions.READ_ONLY);
+            synchronized (pages) {
+                pages.add(page);
+            }
+        });
+        assertEquals(1, hf.reads.get());
+        assertEquals(THREADS, pages.size());
+        for (Page page : pages) {
+            assertSame(pages.get(0), page);
+        }
+    }
+
+    /**
+     * Concurrent misses on different pages never hold more pages than the pool size
+     */
+    @Test
+    public void capacity() throws Exception {
+        int poolPages = PAGES / 2;
+        BufferPool bufferPool = Database.resetBufferPool(poolPages);
+        runConcurrently(() -> {
+            TransactionId tid = new TransactionId();
+            for (int pgNo = 0; pgNo < PAGES; pgNo++) {
+                bufferPool.getPage(tid, new HeapPageId(hf.getId(), pgNo), Permissions.READ_ONLY);
+            }
+            bufferPool.transactionComplete(tid);
+        });
+        int cached = 0;
+        for (int pgNo = 0; pgNo < PAGES; pgNo++) {
+            if (bufferPool.isCached(new HeapPageId(hf.getId(), pgNo))) {
+                cached++;
+            }
+        }
+        assertTrue(cached > 0);
+        assertTrue(cached <= poolPages);
+    }
+
+    /**
+     * An unpin of a page that was discarded meanwhile leaves the pin of its
+     * reloaded copy alone
+     */
+    @Test
+    public void lateUnpin() throws Exception {
+        BufferPool bufferPool = Database.resetBufferPool(2);
+        TransactionId tid = new TransactionId();
+        HeapPageId p0 = new HeapPageId(hf.getId(), 0);
+
+        Page stale = bufferPool.pinPage(tid, p0, Permissions.READ_ONLY, null);
+        bufferPool.discardPage(p0);
+        assertFalse(bufferPool.isCached(p0));
+        Page reloaded = bufferPool.pinPage(tid, p0, Permissions.READ_ONLY, null);
+        assertNotSame(stale, reloaded);
+
+        bufferPool.unpinPage(stale);
+        assertTrue(bufferPool.isPinned(p0));
+        bufferPool.unpinPage(reloaded);
+        assertFalse(bufferPool.isPinned(p0));
+    }
+
+    /**
+     * Pinned pages are not evicted, and all pages pinned leaves nothing to evict
+     */
+    @Test
+    public void pinnedPagesStay() throws Exception {
+        BufferPool bufferPool = Database.resetBufferPool(2);
+        TransactionId tid = new TransactionId();
+        HeapPageId p0 = new HeapPageId(hf.getId(), 0);
+        HeapPageId p1 = new HeapPageId(hf.getId(), 1);
+        HeapPageId p2 = new HeapPageId(hf.getId(), 2);
+
+        Page pinned = bufferPool.pinPage(tid, p0, Permissions.READ_ONLY, null);
+        assertTrue(bufferPool.isPinned(p0));
+        for (int pgNo = 1; pgNo < PAGES; pgNo++) {
+            bufferPool.getPage(tid, new HeapPageId(hf.getId(), pgNo), Permissions.READ_ONLY);
+        }
+        assertSame(pinned, bufferPool.getPage(tid, p0, Permissions.READ_ONLY));
+
+        Page pinned1 = bufferPool.pinPage(tid, p1, Permissions.READ_ONLY, null);
+        try {
+            bufferPool.getPage(tid, p2, Permissions.READ_ONLY);
+            fail("expected a DbException, every page is pinned");
+        } catch (DbException e) {
+            // expected
+        }
+
+        bufferPool.unpinPage(pinned1);
+        assertFalse(bufferPool.isPinned(p1));
+        bufferPool.getPage(tid, p2, Permissions.READ_ONLY);
+        assertFalse(bufferPool.isCached(p1));
+        assertTrue(bufferPool.isCached(p0));
+    }
+
+    /**
+     * A scan keeps only the page it is draining pinned
+     */
+    @Test
+    public void scanPinsCurrentPage() throws Exception {
+        BufferPool bufferPool = Database.getBufferPool();
+        DbFileIterator it = hf.iterator(new TransactionId());
+        it.open();
+        it.next();
+        assertTrue(bufferPool.isPinned(new HeapPageId(hf.getId(), 0)));
+        for (int i = 0; i < 992; i++) {
+            it.next();
+        }
+        assertFalse(bufferPool.isPinned(new HeapPageId(hf.getId(), 0)));
+        assertTrue(bufferPool.isPinned(new HeapPageId(hf.getId(), 1)));
+
+        it.close();
+        assertFalse(bufferPool.isPinned(new HeapPageId(hf.getId(), 1)));
+    }
+
+    /**
+     * Dirties the specified pages on behalf of tid
+     */
+    private void dirty(BufferPool bufferPool, TransactionId tid, int... pgNos) throws Exception {
+        for (int pgNo : pgNos) {
+            Page page = bufferPool.getPage(tid, new HeapPageId(hf.getId(), pgNo), Permissions.READ_WRITE);
+            page.markDirty(true, tid);
+        }
+    }
+
+    /**
+     * A commit waits for its pages, which are written in page number order with adjacent pages coalesced
+     */
+    @Test
+    public void commitWritesPages() throws Exception {
+        BufferPool bufferPool = Database.getBufferPool();
+        TransactionId tid = new TransactionId();
+        dirty(bufferPool, tid, 2, 0, 1, 5);
+        bufferPool.transactionComplete(tid);
+
+        assertEquals(0, bufferPool.getPendingWriteCount());
+        assertEquals(Arrays.asList(Arrays.asList(0, 1, 2, 5)), hf.writes);
+        for (int pgNo : new int[] {0, 1, 2, 5}) {
+            assertNull(bufferPool.getPage(tid, new HeapPageId(hf.getId(), pgNo), Permissions.READ_ONLY).isDirty());
+        }
+    }
+
+    /**
+     * The pages of a commit are written in the same batch, also while the
+     * writer is busy with the batches of other commits
+     */
+    @Test
+    public void commitsAreNotSplit() throws Exception {
+        BufferPool bufferPool = Database.getBufferPool();
+        bufferPool.setDirtyPageHighWaterMark(PAGES);
+        int committers = PAGES / 2;
+        ArrayList<Thread> threads = new ArrayList<>();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        for (int i = 0; i < committers; i++) {
+            final int first = 2 * i;
+            Thread t = new Thread(() -> {
+                try {
+                    for (int n = 0; n < 20; n++) {
+                        TransactionId tid = new TransactionId();
+                        dirty(bufferPool, tid, first, first + 1);
+                        bufferPool.transactionComplete(tid);
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            });
+            t.start();
+            threads.add(t);
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertNull(failure.get());
+        bufferPool.flushAllPages();
+
+        assertFalse(hf.writes.isEmpty());
+        for (List<Integer> write : hf.writes) {
+            // each committer's pair of pages is in a batch as a whole or not at all
+            for (int first = 0; first < PAGES; first += 2) {
+                assertEquals(write.toString(), write.contains(first), write.contains(first + 1));
+            }
+        }
+    }
+
+    /**
+     * A commit waits for its own pages only, not for the pages other
+     * commits haven't handed to the writer yet
+     */
+    @Test(timeout = 10000)
+    public void commitWaitsForOwnPages() throws Exception {
+        CountDownLatch committing = new CountDownLatch(1);
+        CountDownLatch resume = new CountDownLatch(1);
+        File f = SystemTestUtil.createRandomHeapFileUnopened(1, 992, 1000, null, new ArrayList<>());
+        // 提交把页加入批次后、交给writer之前停住
+        HeapFile stalled = new HeapFile(f, Utility.getTupleDesc(1)) {
+            @Override
+            public Page readPage(PageId pid, ByteBuffer frame) {
+                try {
+                    return new HeapPage((HeapPageId) pid, super.readPage(pid, frame).getPageData()) {
+                        @Override
+                        public void markDirty(boolean dirty, TransactionId tid) {
+                            super.markDirty(dirty, tid);
+                            if (!dirty) {
+                                committing.countDown();
+                                try {
+                                    resume.await();
+                                } catch (InterruptedException e) {
+                                    Thread.currentThread().interrupt();
+                                }
+                            }
+                        }
+                    };
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        Database.getCatalog().addTable(stalled, SystemTestUtil.getUUID());
+        BufferPool bufferPool = Database.getBufferPool();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread other = new Thread(() -> {
+            try {
+                TransactionId tid = new TransactionId();
+                bufferPool.getPage(tid, new HeapPageId(stalled.getId(), 0), Permissions.READ_WRITE).markDirty(true, tid);
+                bufferPool.transactionComplete(tid);
+            } catch (Throwable e) {
+                failure.compareAndSet(null, e);
+            }
+        });
+        other.start();
+        committing.await();
+
+        TransactionId tid = new TransactionId();
+        dirty(bufferPool, tid, 0);
+        bufferPool.transactionComplete(tid);
+        assertEquals(Arrays.asList(Arrays.asList(0)), hf.writes);
+
+        resume.countDown();
+        other.join();
+        assertNull(failure.get());
+    }
+
+    /**
+     * Aborted pages are not written
+     */
+    @Test
+    public void abortWritesNothing() throws Exception {
+        BufferPool bufferPool = Database.getBufferPool();
+        TransactionId tid = new TransactionId();
+        dirty(bufferPool, tid, 0, 1);
+        bufferPool.transactionComplete(tid, false);
+
+        assertTrue(hf.writes.isEmpty());
+        assertFalse(bufferPool.isCached(new HeapPageId(hf.getId(), 0)));
+    }
+
+    /**
+     * Above a zero high-water mark, commits may return before their pages
+     * are written, and unwritten pages are written before they are evicted
+     */
+    @Test
+    public void deferredWrites() throws Exception {
+        BufferPool bufferPool = Database.resetBufferPool(2);
+        bufferPool.setDirtyPageHighWaterMark(PAGES);
+        TransactionId tid = new TransactionId();
+        dirty(bufferPool, tid, 0, 1);
+        bufferPool.transactionComplete(tid);
+
+        tid = new TransactionId();
+        for (int pgNo = 0; pgNo < PAGES; pgNo++) {
+            bufferPool.getPage(tid, new HeapPageId(hf.getId(), pgNo), Permissions.READ_ONLY);
+        }
+        assertEquals(0, bufferPool.getPendingWriteCount());
+        assertEquals(2, hf.writes.stream().mapToInt(List::size).sum());
+    }
+
+    /**
+     * An off-heap pool serves pages from its frames, and pages evicted from a
+     * frame keep their contents after the frame is reused
+     */
+    @Test
+    public void offHeapFrames() throws Exception {
+        BufferPool bufferPool = new BufferPool(2, new LruEvictionPolicy(), VictimPolicy.YOUNGEST, true);
+        TransactionId tid = new TransactionId();
+        ArrayList<HeapPage> pages = new ArrayList<>();
+        for (int pgNo = 0; pgNo < PAGES; pgNo++) {
+            pages.add((HeapPage) bufferPool.getPage(tid, new HeapPageId(hf.getId(), pgNo), Permissions.READ_ONLY));
+        }
+        for (int pgNo = 0; pgNo < PAGES; pgNo++) {
+            HeapPage expected = (HeapPage) hf.readPage(new HeapPageId(hf.getId(), pgNo));
+            assertEquals(expected.iterator().next().getField(0), pages.get(pgNo).iterator().next().getField(0));
+            assertArrayEquals(expected.getPageData(), pages.get(pgNo).getPageData());
+        }
+        assertTrue(bufferPool.isCached(new HeapPageId(hf.getId(), PAGES - 1)));
+        assertFalse(bufferPool.isCached(new HeapPageId(hf.getId(), 0)));
+    }
+
+    /**
+     * Clean pages evicted into the compressed tier are served from it
+     * without reading the disk again, with their contents intact
+     */
+    @Test
+    public void compressedTier() throws Exception {
+        BufferPool bufferPool = Database.resetBufferPool(2);
+        bufferPool.setCompressedTierBytes((long) PAGES * BufferPool.getPageSize());
+        TransactionId tid = new TransactionId();
+        for (int pgNo = 0; pgNo < PAGES; pgNo++) {
+            bufferPool.getPage(tid, new HeapPageId(hf.getId(), pgNo), Permissions.READ_ONLY);
+        }
+        ArrayList<byte[]> images = new ArrayList<>();
+        for (int pgNo = 0; pgNo < PAGES; pgNo++) {
+            images.add(bufferPool.getPage(tid, new HeapPageId(hf.getId(), pgNo), Permissions.READ_ONLY).getPageData());
+        }
+        assertEquals(PAGES, hf.reads.get());
+        for (int pgNo = 0; pgNo < PAGES; pgNo++) {
+            assertArrayEquals(hf.readPage(new HeapPageId(hf.getId(), pgNo)).getPageData(), images.get(pgNo));
+        }
+
+        // a discarded page must be read from disk again
+        int reads = hf.reads.get();
+        bufferPool.discardPage(new HeapPageId(hf.getId(), 0));
+        bufferPool.getPage(tid, new HeapPageId(hf.getId(), 0), Permissions.READ_ONLY);
+        assertEquals(reads + 1, hf.reads.get());
+    }
+
+    /**
+     * A page taken out of the compressed tier refreshes the free space map
+     * as a page read from disk does
+     */
+    @Test
+    public void compressedTierRefreshesFreeSpace() throws Exception {
+        BufferPool bufferPool = Database.resetBufferPool(2);
+        bufferPool.setCompressedTierBytes((long) PAGES * BufferPool.getPageSize());
+        TransactionId tid = new TransactionId();
+        for (int pgNo = 0; pgNo < PAGES; pgNo++) {
+            bufferPool.getPage(tid, new HeapPageId(hf.getId(), pgNo), Permissions.READ_ONLY);
+        }
+        FreeSpaceMap fsm = hf.getFreeSpaceMap();
+        HeapPage onDisk = (HeapPage) hf.readPage(new HeapPageId(hf.getId(), 0));
+        fsm.update(0, onDisk.getNumSlots(), onDisk.getNumSlots());
+
+        int reads = hf.reads.get();
+        bufferPool.getPage(tid, new HeapPageId(hf.getId(), 0), Permissions.READ_ONLY);
+        assertEquals(reads, hf.reads.get());
+        assertEquals(FreeSpaceMap.fullnessOf(onDisk.getNumEmptySlots(), onDisk.getNumSlots()), fsm.getFullness(0));
+    }
+
+    /**
+     * Hits reach the eviction policy before it picks a victim, but only
+     * for pages still in the pool
+     */
+    @Test
+    public void hitsRecordedBeforeEviction() throws Exception {
+        LruEvictionPolicy policy = new LruEvictionPolicy();
+        BufferPool bufferPool = Database.resetBufferPool(2, policy);
+        TransactionId tid = new TransactionId();
+        HeapPageId[] pids = new HeapPageId[4];
+        for (int pgNo = 0; pgNo < pids.length; pgNo++) {
+            pids[pgNo] = new HeapPageId(hf.getId(), pgNo);
+        }
+        bufferPool.getPage(tid, pids[0], Permissions.READ_ONLY);
+        bufferPool.getPage(tid, pids[1], Permissions.READ_ONLY);
+        bufferPool.getPage(tid, pids[0], Permissions.READ_ONLY);
+        bufferPool.getPage(tid, pids[2], Permissions.READ_ONLY);
+        assertTrue(bufferPool.isCached(pids[0]));
+        assertFalse(bufferPool.isCached(pids[1]));
+
+        // a page hit and then discarded doesn't come back into the policy
+        bufferPool.getPage(tid, pids[0], Permissions.READ_ONLY);
+        bufferPool.discardPage(pids[0]);
+        bufferPool.getPage(tid, pids[3], Permissions.READ_ONLY);
+        bufferPool.getPage(tid, pids[1], Permissions.READ_ONLY);
+        assertFalse(policy.pagesByRecency().contains(pids[0]));
+        assertEquals(2, policy.pagesByRecency().size());
+        bufferPool.transactionComplete(tid);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(BufferPoolTest.class);
+    }
+}
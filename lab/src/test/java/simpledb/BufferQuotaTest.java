@@ -0,0 +1,145 @@
+package simpledb;
+
+import junit.framework.JUnit4TestAdapter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import simpledb.model.BufferQuota;
+import simpledb.model.Catalog;
+import simpledb.model.Database;
+import simpledb.model.Permissions;
+import simpledb.model.TransactionId;
+import simpledb.model.dbfile.HeapFile;
+import simpledb.model.pageid.HeapPageId;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.util.BufferPool;
+
+import java.io.File;
+import java.io.PrintWriter;
+
+import static org.junit.Assert.*;
+
+public class BufferQuotaTest extends SimpleDbTestBase {
+
+    private static final int POOL_PAGES = 4;
+    private static final int LOOKUP_PAGES = 2;
+    private static final int ANALYTIC_PAGES = 8;
+
+    private HeapFile lookup;
+    private HeapFile analytic;
+    private BufferPool bufferPool;
+    private TransactionId tid;
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        lookup = SystemTestUtil.createRandomHeapFile(1, 992 * LOOKUP_PAGES, null, null);
+        analytic = SystemTestUtil.createRandomHeapFile(1, 992 * ANALYTIC_PAGES, null, null);
+        bufferPool = Database.resetBufferPool(POOL_PAGES);
+        tid = new TransactionId();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        bufferPool.transactionComplete(tid);
+        Database.getCatalog().clear();
+    }
+
+    private void read(HeapFile f, int pages) throws Exception {
+        for (int pgNo = 0; pgNo < pages; pgNo++) {
+            bufferPool.getPage(tid, new HeapPageId(f.getId(), pgNo), Permissions.READ_ONLY);
+        }
+    }
+
+    /**
+     * @return true if every page of the lookup table is cached
+     */
+    private boolean lookupCached() {
+        for (int pgNo = 0; pgNo < LOOKUP_PAGES; pgNo++) {
+            if (!bufferPool.isCached(new HeapPageId(lookup.getId(), pgNo))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Without quotas, reading the analytic table pushes the lookup table out
+     */
+    @Test
+    public void noQuota() throws Exception {
+        read(lookup, LOOKUP_PAGES);
+        read(analytic, ANALYTIC_PAGES);
+        assertEquals(0, bufferPool.getCachedPageCount(lookup.getId()));
+        assertEquals(POOL_PAGES, bufferPool.getCachedPageCount(analytic.getId()));
+    }
+
+    /**
+     * Pages of a low priority table are evicted before those of a high priority one
+     */
+    @Test
+    public void priority() throws Exception {
+        Catalog catalog = Database.getCatalog();
+        catalog.setBufferQuota(lookup.getId(), new BufferQuota(0, 0, BufferQuota.Priority.HIGH));
+        catalog.setBufferQuota(analytic.getId(), new BufferQuota(0, 0, BufferQuota.Priority.LOW));
+        read(lookup, LOOKUP_PAGES);
+        read(analytic, ANALYTIC_PAGES);
+        assertTrue(lookupCached());
+    }
+
+    /**
+     * A table keeps its reserved pages while other pages can be evicted
+     */
+    @Test
+    public void reservation() throws Exception {
+        Database.getCatalog().setBufferQuota(lookup.getId(), new BufferQuota(LOOKUP_PAGES, 0, BufferQuota.Priority.NORMAL));
+        read(lookup, LOOKUP_PAGES);
+        read(analytic, ANALYTIC_PAGES);
+        assertTrue(lookupCached());
+        assertEquals(POOL_PAGES - LOOKUP_PAGES, bufferPool.getCachedPageCount(analytic.getId()));
+    }
+
+    /**
+     * A capped table recycles its own pages
+     */
+    @Test
+    public void cap() throws Exception {
+        Database.getCatalog().setBufferQuota(analytic.getId(), new BufferQuota(0, 1, BufferQuota.Priority.NORMAL));
+        read(lookup, LOOKUP_PAGES);
+        read(analytic, ANALYTIC_PAGES);
+        assertTrue(lookupCached());
+        assertEquals(1, bufferPool.getCachedPageCount(analytic.getId()));
+    }
+
+    /**
+     * Quotas are read from the schema
+     */
+    @Test
+    public void schema() throws Exception {
+        File schema = File.createTempFile("catalog", ".txt");
+        schema.deleteOnExit();
+        try (PrintWriter out = new PrintWriter(schema)) {
+            out.println("lookup (id int pk, v int) priority=high reserve=8");
+            out.println("facts (id int, v int) heap priority=low max=64");
+            out.println("plain (id int)");
+        }
+        Catalog catalog = Database.getCatalog();
+        catalog.loadSchema(schema.getAbsolutePath());
+
+        BufferQuota quota = catalog.getBufferQuota(catalog.getTableId("lookup"));
+        assertEquals(BufferQuota.Priority.HIGH, quota.getPriority());
+        assertEquals(8, quota.getReservedPages());
+        quota = catalog.getBufferQuota(catalog.getTableId("facts"));
+        assertEquals(BufferQuota.Priority.LOW, quota.getPriority());
+        assertEquals(64, quota.getMaxPages());
+        assertFalse(catalog.getBufferQuota(catalog.getTableId("plain")).isRestrictive());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(BufferQuotaTest.class);
+    }
+}
@@ -0,0 +1,162 @@
+package simpledb;
+
+import junit.framework.JUnit4TestAdapter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import simpledb.enums.Type;
+import simpledb.model.Database;
+import simpledb.model.DbFileIterator;
+import simpledb.model.TransactionId;
+import simpledb.model.Tuple;
+import simpledb.model.TupleDesc;
+import simpledb.model.dbfile.BulkLoader;
+import simpledb.model.dbfile.HeapFile;
+import simpledb.model.dbfile.HeapFileEncoder;
+import simpledb.model.field.IntField;
+import simpledb.model.field.StringField;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.util.BufferPool;
+import simpledb.util.Utility;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class BulkLoaderTest extends SimpleDbTestBase {
+
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        file = File.createTempFile("table", ".dat");
+        file.deleteOnExit();
+    }
+
+    @After
+    public void tearDown() {
+        Database.getCatalog().clear();
+    }
+
+    private static int[][] randomRows(int rows, int columns) {
+        Random r = new Random(rows);
+        int[][] data = new int[rows][columns];
+        for (int[] row : data) {
+            for (int j = 0; j < columns; j++) {
+                row[j] = r.nextInt();
+            }
+        }
+        return data;
+    }
+
+    private static void load(File f, int[][] data, int pageSize, int threads) throws IOException {
+        try (BulkLoader loader = new BulkLoader(f, Utility.getTupleDesc(data[0].length), pageSize, threads)) {
+            for (int[] row : data) {
+                loader.addRow(row);
+            }
+        }
+    }
+
+    /**
+     * The loader writes the same file as HeapFileEncoder from a text file
+     */
+    @Test
+    public void matchesEncoder() throws Exception {
+        int[][] data = randomRows(3000, 3);
+        File text = File.createTempFile("table", ".txt");
+        text.deleteOnExit();
+        try (PrintWriter out = new PrintWriter(new FileWriter(text))) {
+            for (int[] row : data) {
+                out.println(row[0] + "," + row[1] + "," + row[2]);
+            }
+        }
+        for (int pageSize : new int[] {BufferPool.getPageSize(), 1024}) {
+            File encoded = File.createTempFile("encoded", ".dat");
+            encoded.deleteOnExit();
+            HeapFileEncoder.convert(text, encoded, pageSize, 3);
+            load(file, data, pageSize, 1);
+            assertArrayEquals(Files.readAllBytes(encoded.toPath()), Files.readAllBytes(file.toPath()));
+        }
+    }
+
+    /**
+     * Pages built by several threads, over several batches, are the pages
+     * built by one
+     */
+    @Test
+    public void parallel() throws Exception {
+        int[][] data = randomRows(1200000, 2);
+        load(file, data, BufferPool.getPageSize(), 1);
+        File parallel = File.createTempFile("parallel", ".dat");
+        parallel.deleteOnExit();
+        load(parallel, data, BufferPool.getPageSize(), 4);
+        assertArrayEquals(Files.readAllBytes(file.toPath()), Files.readAllBytes(parallel.toPath()));
+    }
+
+    /**
+     * Tuples of any type are loaded and read back through a HeapFile
+     */
+    @Test
+    public void tuples() throws Exception {
+        TupleDesc td = new TupleDesc(new Type[] {Type.INT_TYPE, Type.STRING_TYPE});
+        int rows = 500;
+        try (BulkLoader loader = new BulkLoader(file, td, 2048, 2)) {
+            for (int i = 0; i < rows; i++) {
+                Tuple t = new Tuple(td);
+                t.setField(0, new IntField(i));
+                t.setField(1, new StringField("row " + i, Type.STRING_LEN));
+                loader.add(t);
+            }
+            assertEquals(rows, loader.getTupleCount());
+        }
+
+        HeapFile hf = new HeapFile(file, td);
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+        assertEquals(2048, hf.getPageSize());
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = hf.iterator(tid);
+        it.open();
+        for (int i = 0; i < rows; i++) {
+            assertTrue(it.hasNext());
+            Tuple t = it.next();
+            assertEquals(new IntField(i), t.getField(0));
+            assertEquals("row " + i, ((StringField) t.getField(1)).getValue());
+        }
+        assertFalse(it.hasNext());
+        it.close();
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * An empty table has one empty page
+     */
+    @Test
+    public void empty() throws Exception {
+        new BulkLoader(file, Utility.getTupleDesc(2)).close();
+        assertEquals(BufferPool.getPageSize(), file.length());
+    }
+
+    /**
+     * Rows must match the schema
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void rowMismatch() throws Exception {
+        try (BulkLoader loader = new BulkLoader(file, Utility.getTupleDesc(2))) {
+            loader.addRow(1, 2, 3);
+        }
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(BulkLoaderTest.class);
+    }
+}
@@ -0,0 +1,138 @@
+package simpledb;
+
+import junit.framework.JUnit4TestAdapter;
+import org.junit.Test;
+import simpledb.model.Database;
+import simpledb.model.dbfile.HeapFile;
+import simpledb.model.pageid.HeapPageId;
+import simpledb.model.pageid.PageId;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.util.eviction.ClockEvictionPolicy;
+import simpledb.util.eviction.EvictionPolicy;
+import simpledb.util.eviction.LruEvictionPolicy;
+import simpledb.util.eviction.LruKEvictionPolicy;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class EvictionPolicyTest extends SimpleDbTestBase {
+
+    private static final PageId P0 = new HeapPageId(1, 0);
+    private static final PageId P1 = new HeapPageId(1, 1);
+    private static final PageId P2 = new HeapPageId(1, 2);
+
+    /**
+     * Unit test for LruEvictionPolicy.chooseVictim()
+     */
+    @Test
+    public void lru() {
+        EvictionPolicy policy = new LruEvictionPolicy();
+        policy.recordAccess(P0);
+        policy.recordAccess(P1);
+        policy.recordAccess(P2);
+        policy.recordAccess(P0);
+        assertEquals(P1, policy.chooseVictim(pid -> true));
+        assertEquals(P2, policy.chooseVictim(pid -> !pid.equals(P1)));
+
+        policy.remove(P1);
+        assertEquals(P2, policy.chooseVictim(pid -> true));
+    }
+
+    /**
+     * Unit test for ClockEvictionPolicy.chooseVictim()
+     */
+    @Test
+    public void clock() {
+        EvictionPolicy policy = new ClockEvictionPolicy();
+        policy.recordAccess(P0);
+        policy.recordAccess(P1);
+        policy.recordAccess(P2);
+
+        // every reference bit is set: the first sweep clears them all
+        assertEquals(P0, policy.chooseVictim(pid -> true));
+        policy.remove(P0);
+
+        // P1 gets a second chance
+        policy.recordAccess(P1);
+        assertEquals(P2, policy.chooseVictim(pid -> true));
+        assertNull(policy.chooseVictim(pid -> false));
+    }
+
+    /**
+     * Unit test for LruKEvictionPolicy.chooseVictim()
+     */
+    @Test
+    public void lruK() {
+        EvictionPolicy policy = new LruKEvictionPolicy(2);
+        policy.recordAccess(P0);
+        policy.recordAccess(P0);
+        policy.recordAccess(P1);
+        policy.recordAccess(P1);
+        // P2 is referenced once, most recently, but is still the victim
+        policy.recordAccess(P2);
+        assertEquals(P2, policy.chooseVictim(pid -> true));
+
+        policy.remove(P2);
+        assertEquals(P0, policy.chooseVictim(pid -> true));
+        policy.recordAccess(P0);
+        policy.recordAccess(P0);
+        // P0's second to last access is now later than P1's
+        assertEquals(P1, policy.chooseVictim(pid -> true));
+    }
+
+    /**
+     * Unit test for EvictionPolicy.pagesByRecency(): the page a policy would
+     * evict first comes last
+     */
+    @Test
+    public void pagesByRecency() {
+        EvictionPolicy lru = new LruEvictionPolicy();
+        for (PageId pid : new PageId[] {P0, P1, P2, P0}) {
+            lru.recordAccess(pid);
+        }
+        assertEquals(Arrays.asList(P0, P2, P1), lru.pagesByRecency());
+
+        EvictionPolicy[] policies = new EvictionPolicy[] {
+                new LruEvictionPolicy(), new ClockEvictionPolicy(), new LruKEvictionPolicy()
+        };
+        for (EvictionPolicy policy : policies) {
+            for (PageId pid : new PageId[] {P0, P0, P1, P2, P1}) {
+                policy.recordAccess(pid);
+            }
+            List<PageId> pages = policy.pagesByRecency();
+            assertEquals(3, pages.size());
+            assertEquals(policy.chooseVictim(pid -> true), pages.get(2));
+        }
+    }
+
+    /**
+     * Scanning a table larger than the pool must succeed with every policy
+     */
+    @Test
+    public void scanLargerThanPool() throws Exception {
+        final int PAGES = 12;
+        EvictionPolicy[] policies = new EvictionPolicy[] {
+                new LruEvictionPolicy(), new ClockEvictionPolicy(), new LruKEvictionPolicy()
+        };
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<>();
+        HeapFile f = SystemTestUtil.createRandomHeapFile(1, 992 * PAGES, null, tuples);
+        assertEquals(PAGES, f.numPages());
+
+        for (EvictionPolicy policy : policies) {
+            Database.resetBufferPool(PAGES / 3, policy);
+            SystemTestUtil.matchTuples(f, tuples);
+            SystemTestUtil.matchTuples(f, tuples);
+        }
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(EvictionPolicyTest.class);
+    }
+}
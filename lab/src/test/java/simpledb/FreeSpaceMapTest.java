@@ -0,0 +1,104 @@
+package simpledb;
+
+import junit.framework.JUnit4TestAdapter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import simpledb.model.dbfile.FreeSpaceMap;
+import simpledb.systemtest.SimpleDbTestBase;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+public class FreeSpaceMapTest extends SimpleDbTestBase {
+
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        file = File.createTempFile("table", ".fsm");
+        file.delete();
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    /**
+     * Pages the map knows nothing about count as empty, full pages are skipped
+     */
+    @Test
+    public void findPage() {
+        FreeSpaceMap fsm = new FreeSpaceMap(file);
+        assertEquals(-1, fsm.findPage(0));
+        assertEquals(0, fsm.findPage(3));
+        fsm.update(0, 0, 10);
+        fsm.update(1, 0, 10);
+        assertEquals(2, fsm.findPage(3));
+        fsm.update(2, 0, 10);
+        assertEquals(-1, fsm.findPage(3));
+
+        // a page getting room again is found before later ones
+        assertEquals(3, fsm.findPage(5));
+        fsm.update(1, 1, 10);
+        assertEquals(1, fsm.findPage(5));
+        assertEquals(FreeSpaceMap.fullnessOf(1, 10), fsm.getFullness(1));
+        assertEquals(FreeSpaceMap.EMPTY, fsm.getFullness(4));
+    }
+
+    /**
+     * The map is stored in its sidecar file and read back on first use
+     */
+    @Test
+    public void flush() throws Exception {
+        FreeSpaceMap fsm = new FreeSpaceMap(file);
+        for (int pgNo = 0; pgNo < 100; pgNo++) {
+            fsm.update(pgNo, pgNo == 42 ? 5 : 0, 10);
+        }
+        fsm.flush();
+        assertEquals(100, file.length());
+
+        fsm.update(7, 10, 10);
+        fsm.flush();
+        FreeSpaceMap reloaded = new FreeSpaceMap(file);
+        assertEquals(7, reloaded.findPage(100));
+        assertEquals(FreeSpaceMap.EMPTY, reloaded.getFullness(7));
+        reloaded.update(7, 0, 10);
+        assertEquals(42, reloaded.findPage(100));
+        assertEquals(FreeSpaceMap.fullnessOf(5, 10), reloaded.getFullness(42));
+    }
+
+    /**
+     * Filling a table page after page doesn't rescan the full pages
+     */
+    @Test(timeout = 10000)
+    public void largeTable() {
+        FreeSpaceMap fsm = new FreeSpaceMap(file);
+        int pages = 1 << 20;
+        for (int pgNo = 0; pgNo < pages; pgNo++) {
+            assertEquals(pgNo, fsm.findPage(pages));
+            fsm.update(pgNo, 0, 10);
+        }
+        assertEquals(-1, fsm.findPage(pages));
+    }
+
+    /**
+     * The sidecar of table.dat is table.fsm in the same directory
+     */
+    @Test
+    public void sidecarFile() {
+        File dir = new File("some", "dir").getAbsoluteFile();
+        assertEquals(new File(dir, "table.fsm"), FreeSpaceMap.sidecarFile(new File(dir, "table.dat")));
+        assertEquals(new File(dir, "table.bin.fsm"), FreeSpaceMap.sidecarFile(new File(dir, "table.bin")));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(FreeSpaceMapTest.class);
+    }
+}
@@ -0,0 +1,125 @@
+package simpledb;
+
+import junit.framework.JUnit4TestAdapter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import simpledb.enums.Type;
+import simpledb.model.Database;
+import simpledb.model.DbFileIterator;
+import simpledb.model.TransactionId;
+import simpledb.model.Tuple;
+import simpledb.model.dbfile.HeapFile;
+import simpledb.model.dbfile.HeapFileEncoder;
+import simpledb.model.field.IntField;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.util.BufferPool;
+import simpledb.util.Utility;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+public class HeapFileEncoderTest extends SimpleDbTestBase {
+
+    private File text;
+    private File sequential;
+    private File parallel;
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        text = File.createTempFile("table", ".txt");
+        text.deleteOnExit();
+        sequential = File.createTempFile("sequential", ".dat");
+        sequential.deleteOnExit();
+        parallel = File.createTempFile("parallel", ".dat");
+        parallel.deleteOnExit();
+    }
+
+    @After
+    public void tearDown() {
+        Database.getCatalog().clear();
+    }
+
+    /**
+     * An input of one chunk is encoded as the sequential encoder encodes it,
+     * blank lines and carriage returns included
+     */
+    @Test
+    public void parallelMatchesSequential() throws Exception {
+        try (PrintWriter out = new PrintWriter(new FileWriter(text))) {
+            for (int i = 0; i < 2000; i++) {
+                out.print(i + "| name " + i + " |" + (-i * 7) + "\r\n");
+                if (i % 100 == 0) {
+                    out.print("\n");
+                }
+            }
+        }
+        Type[] types = {Type.INT_TYPE, Type.STRING_TYPE, Type.INT_TYPE};
+        for (int pageSize : new int[] {BufferPool.getPageSize(), 8192}) {
+            HeapFileEncoder.convert(text, sequential, pageSize, 3, types, '|');
+            HeapFileEncoder.convert(text, parallel, pageSize, 3, types, '|', 4);
+            assertArrayEquals(Files.readAllBytes(sequential.toPath()), Files.readAllBytes(parallel.toPath()));
+        }
+    }
+
+    /**
+     * An input of several chunks keeps the order of its lines
+     */
+    @Test
+    public void severalChunks() throws Exception {
+        int rows = 1200000;
+        try (PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(text)))) {
+            for (int i = 0; i < rows; i++) {
+                out.print(i + "," + (-i) + "\n");
+            }
+        }
+        assertTrue(text.length() > 8 << 20);
+        HeapFileEncoder.convert(text, parallel, BufferPool.getPageSize(), 2, Utility.getTypes(2), ',', 3);
+
+        HeapFile hf = Utility.openHeapFile(2, parallel);
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = hf.iterator(tid);
+        it.open();
+        for (int i = 0; i < rows; i++) {
+            Tuple t = it.next();
+            assertEquals(new IntField(i), t.getField(0));
+            assertEquals(new IntField(-i), t.getField(1));
+        }
+        assertFalse(it.hasNext());
+        it.close();
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * SimpleDb convert accepts --threads along with --page-size
+     */
+    @Test
+    public void convertCommand() throws Exception {
+        File input = new File(text.getParentFile(), SystemTestUtil.getUUID() + ".txt");
+        File output = new File(text.getParentFile(), input.getName().replace(".txt", ".dat"));
+        input.deleteOnExit();
+        output.deleteOnExit();
+        try (PrintWriter out = new PrintWriter(new FileWriter(input))) {
+            out.print("1,2\n3,4\n");
+        }
+        SimpleDb.main(new String[] {"convert", "--threads", "2", "--page-size", "1024", input.getPath(), "2"});
+        assertEquals(2 * 1024, output.length());
+        HeapFile hf = Utility.openHeapFile(2, output);
+        assertEquals(1024, hf.getPageSize());
+        assertEquals(1, hf.numPages());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(HeapFileEncoderTest.class);
+    }
+}
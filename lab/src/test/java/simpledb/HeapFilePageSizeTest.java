@@ -0,0 +1,117 @@
+package simpledb;
+
+import junit.framework.JUnit4TestAdapter;
+import org.junit.After;
+import org.junit.Test;
+import simpledb.model.Database;
+import simpledb.model.dbfile.HeapFile;
+import simpledb.model.dbfile.HeapFileEncoder;
+import simpledb.model.dbfile.MappedHeapFile;
+import simpledb.model.page.HeapPage;
+import simpledb.model.pageid.HeapPageId;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.util.BufferPool;
+import simpledb.util.Utility;
+
+import java.io.File;
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+
+public class HeapFilePageSizeTest extends SimpleDbTestBase {
+
+    private static final int PAGE_SIZE = 16384;
+
+    @After
+    public void tearDown() {
+        Database.getCatalog().clear();
+    }
+
+    /**
+     * @return a file of PAGE_SIZE pages holding rows single int tuples
+     */
+    private static File encode(int rows, ArrayList<ArrayList<Integer>> tuples) throws Exception {
+        for (int i = 0; i < rows; i++) {
+            ArrayList<Integer> tuple = new ArrayList<>();
+            tuple.add(i);
+            tuples.add(tuple);
+        }
+        File f = File.createTempFile("table", ".dat");
+        f.deleteOnExit();
+        HeapFileEncoder.convert(tuples, f, PAGE_SIZE, 1);
+        return f;
+    }
+
+    private static HeapFile open(HeapFile hf) {
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+        return hf;
+    }
+
+    /**
+     * The page size of an encoded file is read back from its header, and
+     * the file is scanned with pages of that size
+     */
+    @Test
+    public void encodedFile() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<>();
+        int slots = (PAGE_SIZE * 8) / (4 * 8 + 1);
+        File f = encode(slots * 3 + 1, tuples);
+        assertEquals(5L * PAGE_SIZE, f.length());
+
+        HeapFile hf = open(new HeapFile(f, Utility.getTupleDesc(1)));
+        assertEquals(PAGE_SIZE, hf.getPageSize());
+        assertEquals(4, hf.numPages());
+        HeapPage page = (HeapPage) hf.readPage(new HeapPageId(hf.getId(), 0));
+        assertEquals(PAGE_SIZE, page.getPageData().length);
+        assertEquals(0, page.getNumEmptySlots());
+        SystemTestUtil.matchTuples(hf, tuples);
+
+        HeapFile mapped = open(new MappedHeapFile(f, Utility.getTupleDesc(1)));
+        assertEquals(PAGE_SIZE, mapped.getPageSize());
+        SystemTestUtil.matchTuples(mapped, tuples);
+    }
+
+    /**
+     * An empty file gets a header for a page size other than the default,
+     * and none for the default page size
+     */
+    @Test
+    public void emptyFile() throws Exception {
+        File f = File.createTempFile("table", ".dat");
+        f.deleteOnExit();
+        HeapFile hf = open(new HeapFile(f, Utility.getTupleDesc(1), PAGE_SIZE));
+        assertEquals(0, hf.numPages());
+        assertEquals(PAGE_SIZE, f.length());
+
+        hf.writePage(new HeapPage(new HeapPageId(hf.getId(), 0), HeapPage.createEmptyPageData(PAGE_SIZE)));
+        assertEquals(1, hf.numPages());
+        assertEquals(2L * PAGE_SIZE, f.length());
+
+        // a file that already has a header keeps its page size
+        HeapFile reopened = open(new HeapFile(f, Utility.getTupleDesc(1)));
+        assertEquals(PAGE_SIZE, reopened.getPageSize());
+        assertEquals(1, reopened.numPages());
+
+        File legacy = File.createTempFile("table", ".dat");
+        legacy.deleteOnExit();
+        HeapFile plain = open(new HeapFile(legacy, Utility.getTupleDesc(1)));
+        assertEquals(BufferPool.getPageSize(), plain.getPageSize());
+        assertEquals(0, legacy.length());
+    }
+
+    /**
+     * Page sizes must be powers of two within bounds
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidPageSize() {
+        new HeapFile(new File("unused.dat"), Utility.getTupleDesc(1), 5000);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(HeapFilePageSizeTest.class);
+    }
+}
@@ -7,11 +7,18 @@ import org.junit.Test;
 import simpledb.model.*;
 import simpledb.model.dbfile.HeapFile;
 import simpledb.model.page.HeapPage;
+import simpledb.model.page.Page;
 import simpledb.model.pageid.HeapPageId;
+import simpledb.model.pageid.PageId;
 import simpledb.systemtest.SimpleDbTestBase;
 import simpledb.systemtest.SystemTestUtil;
+import simpledb.util.BufferPool;
 import simpledb.util.Utility;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.NoSuchElementException;
 
 import static org.junit.Assert.*;
@@ -82,6 +89,25 @@ public class HeapFileReadTest extends SimpleDbTestBase {
         assertFalse(page.isSlotUsed(20));
     }
 
+    /**
+     * Unit test for HeapFile.readPage() of a page past the end of the file
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void readPageOutOfRange() throws Exception {
+        hf.readPage(new HeapPageId(hf.getId(), hf.numPages()));
+    }
+
+    /**
+     * Unit test for HeapFile.readPage() after the file was closed
+     */
+    @Test
+    public void readPageAfterClose() throws Exception {
+        HeapPageId pid = new HeapPageId(hf.getId(), 0);
+        hf.close();
+        HeapPage page = (HeapPage) hf.readPage(pid);
+        assertEquals(484, page.getNumEmptySlots());
+    }
+
     @Test
     public void testIteratorBasic() throws Exception {
         HeapFile smallFile = SystemTestUtil.createRandomHeapFile(3, 10, null, null);
@@ -126,6 +152,36 @@ public class HeapFileReadTest extends SimpleDbTestBase {
         it.close();
     }
 
+    /**
+     * Unit test for HeapFile.readPages(): runs of adjacent pages and single
+     * pages read the same as readPage, including into given frames
+     */
+    @Test
+    public void readPages() throws Exception {
+        HeapFile large = SystemTestUtil.createRandomHeapFile(1, 992 * 6, null, null);
+        List<PageId> pids = new ArrayList<>();
+        for (int pgNo : new int[] {0, 1, 2, 4, 5}) {
+            pids.add(new HeapPageId(large.getId(), pgNo));
+        }
+        List<ByteBuffer> frames = new ArrayList<>();
+        for (int i = 0; i < pids.size(); i++) {
+            frames.add(i % 2 == 0 ? ByteBuffer.allocateDirect(BufferPool.getPageSize()) : null);
+        }
+        List<Page> pages = large.readPages(pids, frames);
+        assertEquals(pids.size(), pages.size());
+        for (int i = 0; i < pids.size(); i++) {
+            assertEquals(pids.get(i), pages.get(i).getId());
+            assertArrayEquals(large.readPage(pids.get(i)).getPageData(), pages.get(i).getPageData());
+        }
+
+        try {
+            large.readPages(Arrays.asList(new HeapPageId(large.getId(), 5), new HeapPageId(large.getId(), 6)), null);
+            fail("expected an IllegalArgumentException, page 6 does not exist");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
     /**
      * JUnit suite target
      */
@@ -0,0 +1,161 @@
+package simpledb;
+
+import junit.framework.JUnit4TestAdapter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import simpledb.model.Database;
+import simpledb.model.RecordId;
+import simpledb.model.TransactionId;
+import simpledb.model.Tuple;
+import simpledb.model.dbfile.FreeSpaceMap;
+import simpledb.model.dbfile.HeapFile;
+import simpledb.model.page.HeapPage;
+import simpledb.model.page.Page;
+import simpledb.model.pageid.HeapPageId;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.util.BufferPool;
+import simpledb.util.Utility;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class HeapFileWriteTest extends SimpleDbTestBase {
+    private HeapFile hf;
+    private TransactionId tid;
+
+    /**
+     * Set up initial resources for each unit test.
+     */
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        hf = SystemTestUtil.createRandomHeapFile(1, 992 * 4, null, null);
+        tid = new TransactionId();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * @return a page with the contents of page pgNo, placed at page newPgNo
+     */
+    private HeapPage moved(int pgNo, int newPgNo) throws Exception {
+        byte[] data = hf.readPage(new HeapPageId(hf.getId(), pgNo)).getPageData();
+        return new HeapPage(new HeapPageId(hf.getId(), newPgNo), data);
+    }
+
+    /**
+     * Unit test for HeapFile.writePage()
+     */
+    @Test
+    public void writePage() throws Exception {
+        byte[] expected = hf.readPage(new HeapPageId(hf.getId(), 1)).getPageData();
+        hf.writePage(moved(1, 0));
+        assertArrayEquals(expected, hf.readPage(new HeapPageId(hf.getId(), 0)).getPageData());
+    }
+
+    /**
+     * Unit test for HeapFile.writePages() with runs of adjacent and single pages
+     */
+    @Test
+    public void writePages() throws Exception {
+        byte[][] expected = new byte[4][];
+        for (int pgNo = 0; pgNo < 4; pgNo++) {
+            expected[pgNo] = hf.readPage(new HeapPageId(hf.getId(), pgNo)).getPageData();
+        }
+        // rotate pages 0..2 and append page 3 after a gap
+        ArrayList<Page> pages = new ArrayList<>(Arrays.asList(moved(2, 0), moved(0, 1), moved(1, 2), moved(3, 5)));
+        hf.writePages(pages);
+
+        assertEquals(6, hf.numPages());
+        assertArrayEquals(expected[2], hf.readPage(new HeapPageId(hf.getId(), 0)).getPageData());
+        assertArrayEquals(expected[0], hf.readPage(new HeapPageId(hf.getId(), 1)).getPageData());
+        assertArrayEquals(expected[1], hf.readPage(new HeapPageId(hf.getId(), 2)).getPageData());
+        assertArrayEquals(expected[3], hf.readPage(new HeapPageId(hf.getId(), 3)).getPageData());
+        assertArrayEquals(expected[3], hf.readPage(new HeapPageId(hf.getId(), 5)).getPageData());
+    }
+
+    /**
+     * Unit test for HeapFile.insertTuple() and deleteTuple(): inserts fill the
+     * first page with room, append pages when all are full, and go back to
+     * a page that got room by a delete
+     */
+    @Test
+    public void insertTuple() throws Exception {
+        File f = File.createTempFile("empty", ".dat");
+        f.deleteOnExit();
+        HeapFile empty = Utility.createEmptyHeapFile(f.getAbsolutePath(), 1);
+        FreeSpaceMap.sidecarFile(f).deleteOnExit();
+        BufferPool bufferPool = Database.getBufferPool();
+
+        int slots = new HeapPage(new HeapPageId(empty.getId(), 0), HeapPage.createEmptyPageData()).getNumSlots();
+        Tuple first = null;
+        for (int i = 0; i < slots + 1; i++) {
+            Tuple t = Utility.getHeapTuple(i, 1);
+            bufferPool.insertTuple(tid, empty.getId(), t);
+            assertEquals(i / slots, t.getRecordId().getPageId().pageNumber());
+            if (i == 0) {
+                first = t;
+            }
+        }
+        assertEquals(2, empty.numPages());
+        assertEquals(FreeSpaceMap.FULL, empty.getFreeSpaceMap().getFullness(0));
+
+        bufferPool.deleteTuple(tid, first);
+        Tuple t = Utility.getHeapTuple(-1, 1);
+        bufferPool.insertTuple(tid, empty.getId(), t);
+        assertEquals(new RecordId(new HeapPageId(empty.getId(), 0), 0), t.getRecordId());
+        bufferPool.transactionComplete(tid);
+        bufferPool.flushAllPages();
+
+        // the committed pages are on disk along with the free space map
+        assertEquals(0, ((HeapPage) empty.readPage(new HeapPageId(empty.getId(), 0))).getNumEmptySlots());
+        assertEquals(slots - 1, ((HeapPage) empty.readPage(new HeapPageId(empty.getId(), 1))).getNumEmptySlots());
+        FreeSpaceMap stored = new FreeSpaceMap(FreeSpaceMap.sidecarFile(f));
+        assertEquals(1, stored.findPage(2));
+    }
+
+    /**
+     * Files grow by doubling extents up to the bound, numPages only counts
+     * the pages handed out and close cuts off the rest of the extent
+     */
+    @Test
+    public void extents() throws Exception {
+        File f = File.createTempFile("empty", ".dat");
+        f.deleteOnExit();
+        HeapFile empty = Utility.createEmptyHeapFile(f.getAbsolutePath(), 100);
+        FreeSpaceMap.sidecarFile(f).deleteOnExit();
+        empty.setMaxExtentBytes(4 * BufferPool.getPageSize());
+        int slots = new HeapPage(new HeapPageId(empty.getId(), 0), HeapPage.createEmptyPageData()).getNumSlots();
+
+        // pages 1 to 8 come from extents of 1, 2 and 4 pages, then 4 again
+        int[] physicalPages = {1, 2, 4, 4, 8, 8, 8, 8, 12};
+        for (int pgNo = 0; pgNo < physicalPages.length; pgNo++) {
+            for (int i = 0; i < slots; i++) {
+                Database.getBufferPool().insertTuple(tid, empty.getId(), Utility.getHeapTuple(i, 100));
+            }
+            assertEquals(pgNo + 1, empty.numPages());
+            assertEquals((long) physicalPages[pgNo] * BufferPool.getPageSize(), f.length());
+        }
+        Database.getBufferPool().transactionComplete(tid);
+        Database.getBufferPool().flushAllPages();
+
+        empty.close();
+        assertEquals(9L * BufferPool.getPageSize(), f.length());
+        assertEquals(9, empty.numPages());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(HeapFileWriteTest.class);
+    }
+}
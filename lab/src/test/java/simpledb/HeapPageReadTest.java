@@ -131,6 +131,81 @@ public class HeapPageReadTest extends SimpleDbTestBase {
             assertFalse(page.isSlotUsed(i));
     }
 
+    /**
+     * Unit test for HeapPage.iterator() and HeapPage.getNumEmptySlots() on a
+     * page with empty slots between used ones
+     */
+    @Test
+    public void testIteratorWithHoles() throws Exception {
+        byte[] data = EXAMPLE_DATA.clone();
+        // clear slots 1, 3 and 8
+        data[0] &= ~((1 << 1) | (1 << 3));
+        data[1] &= ~1;
+        HeapPage page = new HeapPage(pid, data);
+        assertEquals(487, page.getNumEmptySlots());
+
+        Iterator<Tuple> it = page.iterator();
+        for (int row = 0; row < EXAMPLE_VALUES.length; row++) {
+            if (row == 1 || row == 3 || row == 8) {
+                continue;
+            }
+            assertTrue(it.hasNext());
+            Tuple tup = it.next();
+            assertEquals(row, tup.getRecordId().tupleno());
+            assertEquals(EXAMPLE_VALUES[row][0], ((IntField) tup.getField(0)).getValue());
+        }
+        assertFalse(it.hasNext());
+    }
+
+    /**
+     * Unit test for HeapPage.getField()
+     */
+    @Test
+    public void getField() throws Exception {
+        HeapPage page = new HeapPage(pid, EXAMPLE_DATA);
+
+        for (int i = 0; i < EXAMPLE_VALUES.length; ++i) {
+            assertEquals(EXAMPLE_VALUES[i][1], ((IntField) page.getField(i, 1)).getValue());
+            assertEquals(EXAMPLE_VALUES[i][0], ((IntField) page.getField(i, 0)).getValue());
+        }
+    }
+
+    /**
+     * Unit test for HeapPage.getPageData() of a partly decoded page
+     */
+    @Test
+    public void getPageData() throws Exception {
+        HeapPage page = new HeapPage(pid, EXAMPLE_DATA);
+        assertArrayEquals(EXAMPLE_DATA, page.getPageData());
+
+        Iterator<Tuple> it = page.iterator();
+        it.next();
+        assertArrayEquals(EXAMPLE_DATA, page.getPageData());
+    }
+
+    /**
+     * Unit test for HeapPage.getBeforeImage() and HeapPage.markDirty()
+     */
+    @Test
+    public void beforeImage() throws Exception {
+        HeapPage page = new HeapPage(pid, EXAMPLE_DATA);
+        assertNull(page.isDirty());
+        assertArrayEquals(EXAMPLE_DATA, page.getBeforeImage().getPageData());
+
+        TransactionId tid = new TransactionId();
+        Tuple t = page.iterator().next();
+        t.setField(0, new IntField(-1));
+        page.markDirty(true, tid);
+        assertEquals(tid, page.isDirty());
+        assertArrayEquals(EXAMPLE_DATA, page.getBeforeImage().getPageData());
+
+        page.setBeforeImage();
+        page.markDirty(false, null);
+        assertNull(page.isDirty());
+        assertArrayEquals(page.getPageData(), page.getBeforeImage().getPageData());
+        assertEquals(-1, ((IntField) page.getBeforeImage().getField(0, 0)).getValue());
+    }
+
     /**
      * JUnit suite target
      */
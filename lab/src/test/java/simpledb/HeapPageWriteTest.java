@@ -0,0 +1,129 @@
+package simpledb;
+
+import junit.framework.JUnit4TestAdapter;
+import org.junit.Before;
+import org.junit.Test;
+import simpledb.TestUtil.SkeletonFile;
+import simpledb.exception.DbException;
+import simpledb.model.Database;
+import simpledb.model.RecordId;
+import simpledb.model.Tuple;
+import simpledb.model.page.HeapPage;
+import simpledb.model.pageid.HeapPageId;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.util.Utility;
+
+import java.util.Iterator;
+
+import static org.junit.Assert.*;
+
+public class HeapPageWriteTest extends SimpleDbTestBase {
+
+    private HeapPageId pid;
+
+    /**
+     * Set up initial resources for each unit test.
+     */
+    @Before
+    public void addTable() throws Exception {
+        this.pid = new HeapPageId(-1, -1);
+        Database.getCatalog().addTable(new SkeletonFile(-1, Utility.getTupleDesc(2)), SystemTestUtil.getUUID());
+    }
+
+    /**
+     * Unit test for HeapPage.insertTuple() until the page is full
+     */
+    @Test
+    public void insertTuple() throws Exception {
+        HeapPage page = new HeapPage(pid, HeapPage.createEmptyPageData());
+        int free = page.getNumEmptySlots();
+        for (int i = 0; i < free; i++) {
+            Tuple t = Utility.getHeapTuple(i, 2);
+            page.insertTuple(t);
+            assertEquals(free - i - 1, page.getNumEmptySlots());
+            assertEquals(new RecordId(pid, i), t.getRecordId());
+        }
+        try {
+            page.insertTuple(Utility.getHeapTuple(0, 2));
+            fail("a full page must reject inserts");
+        } catch (DbException expected) {
+        }
+
+        // the inserted tuples survive serialization
+        HeapPage copy = new HeapPage(pid, page.getPageData());
+        Iterator<Tuple> it = copy.iterator();
+        for (int i = 0; i < free; i++) {
+            assertTrue(TestUtil.compareTuples(Utility.getHeapTuple(i, 2), it.next()));
+        }
+        assertFalse(it.hasNext());
+    }
+
+    /**
+     * Unit test for HeapPage.deleteTuple(), the slot is reused by the next insert
+     */
+    @Test
+    public void deleteTuple() throws Exception {
+        HeapPage page = new HeapPage(pid, HeapPageReadTest.EXAMPLE_DATA);
+        int free = page.getNumEmptySlots();
+        Iterator<Tuple> it = page.iterator();
+        it.next();
+        Tuple second = it.next();
+        page.deleteTuple(second);
+        assertEquals(free + 1, page.getNumEmptySlots());
+        assertFalse(page.isSlotUsed(1));
+        assertNull(second.getRecordId());
+
+        Tuple t = Utility.getHeapTuple(7, 2);
+        page.insertTuple(t);
+        assertEquals(1, t.getRecordId().tupleno());
+        assertEquals(free, page.getNumEmptySlots());
+    }
+
+    /**
+     * A tuple deleted while an iterator is on its header word is skipped
+     */
+    @Test
+    public void deleteWhileIterating() throws Exception {
+        HeapPage page = new HeapPage(pid, HeapPage.createEmptyPageData());
+        Tuple[] inserted = new Tuple[4];
+        for (int i = 0; i < inserted.length; i++) {
+            inserted[i] = Utility.getHeapTuple(i, 2);
+            page.insertTuple(inserted[i]);
+        }
+        Iterator<Tuple> it = page.iterator();
+        assertTrue(TestUtil.compareTuples(inserted[0], it.next()));
+        page.deleteTuple(inserted[1]);
+        assertTrue(TestUtil.compareTuples(inserted[2], it.next()));
+        page.deleteTuple(inserted[3]);
+        assertFalse(it.hasNext());
+    }
+
+    /**
+     * Deleting a tuple twice or from another page fails
+     */
+    @Test(expected = DbException.class)
+    public void deleteTwice() throws Exception {
+        HeapPage page = new HeapPage(pid, HeapPageReadTest.EXAMPLE_DATA);
+        Tuple first = page.iterator().next();
+        page.deleteTuple(first);
+        first.setRecordId(new RecordId(pid, 0));
+        page.deleteTuple(first);
+    }
+
+    /**
+     * Inserting a tuple of another schema fails
+     */
+    @Test(expected = DbException.class)
+    public void insertMismatch() throws Exception {
+        HeapPage page = new HeapPage(pid, HeapPage.createEmptyPageData());
+        page.insertTuple(Utility.getHeapTuple(1, 3));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(HeapPageWriteTest.class);
+    }
+}
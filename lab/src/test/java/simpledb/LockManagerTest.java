@@ -0,0 +1,299 @@
+package simpledb;
+
+import junit.framework.JUnit4TestAdapter;
+import org.junit.Before;
+import org.junit.Test;
+import simpledb.exception.TransactionAbortedException;
+import simpledb.model.Database;
+import simpledb.model.Permissions;
+import simpledb.model.TransactionId;
+import simpledb.model.dbfile.HeapFile;
+import simpledb.model.pageid.HeapPageId;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.util.BufferPool;
+import simpledb.util.lock.LockManager;
+import simpledb.util.lock.LockManager.LockMode;
+import simpledb.util.lock.VictimPolicy;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class LockManagerTest extends SimpleDbTestBase {
+
+    /** Long enough for a blocked request to have been granted if it wasn't blocked. */
+    private static final long BLOCK_MILLIS = 100;
+
+    private LockManager lockManager;
+    private HeapPageId p0;
+    private HeapPageId p1;
+    private TransactionId tid1;
+    private TransactionId tid2;
+
+    /**
+     * Set up initial resources for each unit test.
+     */
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        lockManager = new LockManager();
+        p0 = new HeapPageId(0, 0);
+        p1 = new HeapPageId(0, 1);
+        tid1 = new TransactionId();
+        tid2 = new TransactionId();
+    }
+
+    /**
+     * A lock request made on a separate thread, recording whether it was
+     * granted or aborted.
+     */
+    private static class LockRequest extends Thread {
+        private final LockManager lm;
+        private final TransactionId tid;
+        private final HeapPageId pid;
+        private final LockMode mode;
+        private final AtomicReference<Boolean> granted = new AtomicReference<>();
+
+        LockRequest(LockManager lm, TransactionId tid, HeapPageId pid, LockMode mode) {
+            this.lm = lm;
+            this.tid = tid;
+            this.pid = pid;
+            this.mode = mode;
+            start();
+        }
+
+        @Override
+        public void run() {
+            try {
+                lm.acquire(tid, pid, mode);
+                granted.set(true);
+            } catch (TransactionAbortedException e) {
+                granted.set(false);
+            }
+        }
+
+        /** @return true if granted, false if aborted, null if still blocked */
+        Boolean outcome(long millis) throws InterruptedException {
+            join(millis);
+            return granted.get();
+        }
+    }
+
+    /**
+     * Shared locks on a page are compatible
+     */
+    @Test
+    public void sharedLocks() throws Exception {
+        lockManager.acquire(tid1, p0, LockMode.SHARED);
+        lockManager.acquire(tid2, p0, LockMode.SHARED);
+        assertEquals(LockMode.SHARED, lockManager.getLockMode(tid1, p0));
+        assertEquals(LockMode.SHARED, lockManager.getLockMode(tid2, p0));
+    }
+
+    /**
+     * An exclusive lock excludes every other lock on the page, but not on other pages
+     */
+    @Test
+    public void exclusiveLock() throws Exception {
+        lockManager.acquire(tid1, p0, LockMode.EXCLUSIVE);
+        lockManager.acquire(tid2, p1, LockMode.EXCLUSIVE);
+        LockRequest request = new LockRequest(lockManager, tid2, p0, LockMode.SHARED);
+        assertNull(request.outcome(BLOCK_MILLIS));
+        assertFalse(lockManager.holdsLock(tid2, p0));
+
+        lockManager.release(tid1, p0);
+        assertEquals(Boolean.TRUE, request.outcome(5000));
+        assertTrue(lockManager.holdsLock(tid2, p0));
+    }
+
+    /**
+     * A waiting transaction is granted its lock as soon as the holder releases it
+     */
+    @Test
+    public void waitForRelease() throws Exception {
+        lockManager.acquire(tid1, p0, LockMode.EXCLUSIVE);
+        LockRequest request = new LockRequest(lockManager, tid2, p0, LockMode.EXCLUSIVE);
+        assertNull(request.outcome(BLOCK_MILLIS));
+
+        lockManager.releaseAll(tid1);
+        assertEquals(Boolean.TRUE, request.outcome(5000));
+        assertTrue(lockManager.holdsLock(tid2, p0));
+    }
+
+    /**
+     * The only holder of a shared lock can upgrade it, other holders block the upgrade
+     */
+    @Test
+    public void upgrade() throws Exception {
+        lockManager.acquire(tid1, p0, LockMode.SHARED);
+        lockManager.acquire(tid1, p0, LockMode.EXCLUSIVE);
+        assertEquals(LockMode.EXCLUSIVE, lockManager.getLockMode(tid1, p0));
+        // 排他锁已包含共享锁
+        lockManager.acquire(tid1, p0, LockMode.SHARED);
+        assertEquals(LockMode.EXCLUSIVE, lockManager.getLockMode(tid1, p0));
+
+        lockManager.acquire(tid1, p1, LockMode.SHARED);
+        lockManager.acquire(tid2, p1, LockMode.SHARED);
+        LockRequest request = new LockRequest(lockManager, tid1, p1, LockMode.EXCLUSIVE);
+        assertNull(request.outcome(BLOCK_MILLIS));
+        assertEquals(LockMode.SHARED, lockManager.getLockMode(tid1, p1));
+
+        lockManager.releaseAll(tid2);
+        assertEquals(Boolean.TRUE, request.outcome(5000));
+        assertEquals(LockMode.EXCLUSIVE, lockManager.getLockMode(tid1, p1));
+    }
+
+    /**
+     * A shared request arriving after a blocked exclusive one waits behind
+     * it, so a stream of readers can't starve the writer
+     */
+    @Test
+    public void fifoOrder() throws Exception {
+        TransactionId tid3 = new TransactionId();
+        lockManager.acquire(tid1, p0, LockMode.SHARED);
+        LockRequest writer = new LockRequest(lockManager, tid2, p0, LockMode.EXCLUSIVE);
+        assertNull(writer.outcome(BLOCK_MILLIS));
+        LockRequest reader = new LockRequest(lockManager, tid3, p0, LockMode.SHARED);
+        assertNull(reader.outcome(BLOCK_MILLIS));
+
+        lockManager.releaseAll(tid1);
+        assertEquals(Boolean.TRUE, writer.outcome(5000));
+        assertNull(reader.outcome(BLOCK_MILLIS));
+
+        lockManager.releaseAll(tid2);
+        assertEquals(Boolean.TRUE, reader.outcome(5000));
+    }
+
+    /**
+     * Waiting behind a queued request counts as waiting for its
+     * transaction when looking for deadlocks
+     */
+    @Test
+    public void deadlockThroughQueue() throws Exception {
+        TransactionId tid3 = new TransactionId();
+        lockManager.acquire(tid1, p0, LockMode.SHARED);
+        lockManager.acquire(tid3, p1, LockMode.EXCLUSIVE);
+        LockRequest writer = new LockRequest(lockManager, tid2, p0, LockMode.EXCLUSIVE);
+        assertNull(writer.outcome(BLOCK_MILLIS));
+        // tid3只和持有者兼容，但排在tid2的排他请求之后
+        LockRequest reader = new LockRequest(lockManager, tid3, p0, LockMode.SHARED);
+        assertNull(reader.outcome(BLOCK_MILLIS));
+        // tid1 -> tid3 -> tid2 -> tid1, tid3 is the youngest
+        LockRequest closing = new LockRequest(lockManager, tid1, p1, LockMode.SHARED);
+        assertEquals(Boolean.FALSE, reader.outcome(5000));
+        assertNull(closing.outcome(BLOCK_MILLIS));
+
+        lockManager.releaseAll(tid3);
+        assertEquals(Boolean.TRUE, closing.outcome(5000));
+        lockManager.releaseAll(tid1);
+        assertEquals(Boolean.TRUE, writer.outcome(5000));
+    }
+
+    /**
+     * releaseAll() releases every lock of the transaction
+     */
+    @Test
+    public void releaseAll() throws Exception {
+        lockManager.acquire(tid1, p0, LockMode.EXCLUSIVE);
+        lockManager.acquire(tid1, p1, LockMode.SHARED);
+        assertEquals(2, lockManager.getLockedPages(tid1).size());
+
+        lockManager.releaseAll(tid1);
+        assertTrue(lockManager.getLockedPages(tid1).isEmpty());
+        lockManager.acquire(tid2, p0, LockMode.EXCLUSIVE);
+        lockManager.acquire(tid2, p1, LockMode.EXCLUSIVE);
+    }
+
+    /**
+     * Closes a deadlock between tid1 and tid2 on p0 and p1, with tid2
+     * blocking first, and returns whether the requests of tid1 and tid2 were
+     * granted.
+     */
+    private Boolean[] deadlock(LockManager lm) throws Exception {
+        lm.acquire(tid1, p0, LockMode.EXCLUSIVE);
+        lm.acquire(tid2, p1, LockMode.EXCLUSIVE);
+        LockRequest request2 = new LockRequest(lm, tid2, p0, LockMode.EXCLUSIVE);
+        assertNull(request2.outcome(BLOCK_MILLIS));
+        LockRequest request1 = new LockRequest(lm, tid1, p1, LockMode.EXCLUSIVE);
+
+        // the victim aborts and releases its locks, as transactionComplete() would
+        Boolean outcome1 = request1.outcome(BLOCK_MILLIS);
+        Boolean outcome2 = request2.outcome(BLOCK_MILLIS);
+        if (Boolean.FALSE.equals(outcome1)) {
+            lm.releaseAll(tid1);
+            outcome2 = request2.outcome(5000);
+        } else if (Boolean.FALSE.equals(outcome2)) {
+            lm.releaseAll(tid2);
+            outcome1 = request1.outcome(5000);
+        }
+        assertEquals(1, lm.getDeadlockCount());
+        return new Boolean[] {outcome1, outcome2};
+    }
+
+    /**
+     * The youngest transaction of a deadlock is aborted, even if it didn't close the cycle
+     */
+    @Test
+    public void deadlockYoungest() throws Exception {
+        Boolean[] outcomes = deadlock(new LockManager(LockManager.DEFAULT_STRIPES, VictimPolicy.YOUNGEST));
+        assertEquals(Boolean.TRUE, outcomes[0]);
+        assertEquals(Boolean.FALSE, outcomes[1]);
+    }
+
+    /**
+     * The transaction with the fewest locks is aborted
+     */
+    @Test
+    public void deadlockFewestLocks() throws Exception {
+        LockManager lm = new LockManager(LockManager.DEFAULT_STRIPES, VictimPolicy.FEWEST_LOCKS);
+        lm.acquire(tid2, new HeapPageId(0, 2), LockMode.SHARED);
+        lm.acquire(tid2, new HeapPageId(0, 3), LockMode.SHARED);
+        Boolean[] outcomes = deadlock(lm);
+        assertEquals(Boolean.FALSE, outcomes[0]);
+        assertEquals(Boolean.TRUE, outcomes[1]);
+    }
+
+    /**
+     * The transaction with the fewest exclusive locks is aborted
+     */
+    @Test
+    public void deadlockLeastWork() throws Exception {
+        LockManager lm = new LockManager(LockManager.DEFAULT_STRIPES, VictimPolicy.LEAST_WORK);
+        lm.acquire(tid1, new HeapPageId(0, 2), LockMode.SHARED);
+        lm.acquire(tid1, new HeapPageId(0, 3), LockMode.SHARED);
+        lm.acquire(tid2, new HeapPageId(0, 4), LockMode.EXCLUSIVE);
+        Boolean[] outcomes = deadlock(lm);
+        assertEquals(Boolean.FALSE, outcomes[0]);
+        assertEquals(Boolean.TRUE, outcomes[1]);
+        assertTrue(lm.getDeadlocksPerSecond() > 0);
+    }
+
+    /**
+     * BufferPool.getPage() locks pages until the transaction completes
+     */
+    @Test
+    public void bufferPoolLocks() throws Exception {
+        HeapFile hf = SystemTestUtil.createRandomHeapFile(2, 10, null, null);
+        HeapPageId pid = new HeapPageId(hf.getId(), 0);
+        BufferPool bufferPool = Database.getBufferPool();
+
+        bufferPool.getPage(tid1, pid, Permissions.READ_ONLY);
+        assertTrue(bufferPool.holdsLock(tid1, pid));
+        assertFalse(bufferPool.holdsLock(tid2, pid));
+
+        bufferPool.transactionComplete(tid1);
+        assertFalse(bufferPool.holdsLock(tid1, pid));
+        bufferPool.getPage(tid2, pid, Permissions.READ_WRITE);
+        assertTrue(bufferPool.holdsLock(tid2, pid));
+        bufferPool.releasePage(tid2, pid);
+        assertFalse(bufferPool.holdsLock(tid2, pid));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(LockManagerTest.class);
+    }
+}
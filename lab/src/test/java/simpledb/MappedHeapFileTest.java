@@ -0,0 +1,102 @@
+package simpledb;
+
+import junit.framework.JUnit4TestAdapter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import simpledb.model.Database;
+import simpledb.model.TransactionId;
+import simpledb.model.dbfile.HeapFile;
+import simpledb.model.dbfile.MappedHeapFile;
+import simpledb.model.page.HeapPage;
+import simpledb.model.pageid.HeapPageId;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.util.Utility;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+
+public class MappedHeapFileTest extends SimpleDbTestBase {
+    private ArrayList<ArrayList<Integer>> tuples;
+    private File file;
+    private MappedHeapFile hf;
+
+    /**
+     * Set up initial resources for each unit test.
+     */
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        tuples = new ArrayList<>();
+        file = SystemTestUtil.createRandomHeapFileUnopened(2, 1500, 1000, null, tuples);
+        hf = new MappedHeapFile(file, Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+    }
+
+    @After
+    public void tearDown() {
+        Database.getCatalog().clear();
+    }
+
+    /**
+     * A mapped file scans like a HeapFile
+     */
+    @Test
+    public void scan() throws Exception {
+        assertEquals(3, hf.numPages());
+        SystemTestUtil.matchTuples(hf, tuples);
+    }
+
+    /**
+     * Unit test for MappedHeapFile.readPage() of a page past the end of the file
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void readPageOutOfRange() throws Exception {
+        hf.readPage(new HeapPageId(hf.getId(), hf.numPages()));
+    }
+
+    /**
+     * Pages appended after the file was mapped are readable
+     */
+    @Test
+    public void growth() throws Exception {
+        HeapPageId last = new HeapPageId(hf.getId(), hf.numPages() - 1);
+        HeapPage lastPage = (HeapPage) hf.readPage(last);
+
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write(lastPage.getPageData());
+        }
+        HeapPage appended = (HeapPage) hf.readPage(new HeapPageId(hf.getId(), hf.numPages() - 1));
+        assertArrayEquals(lastPage.getPageData(), appended.getPageData());
+    }
+
+    /**
+     * Catalog.loadSchema() creates a MappedHeapFile for the "mapped" option
+     */
+    @Test
+    public void loadSchema() throws Exception {
+        File schema = new File(file.getParentFile(), SystemTestUtil.getUUID() + ".txt");
+        schema.deleteOnExit();
+        String name = file.getName().replace(".dat", "");
+        try (FileWriter w = new FileWriter(schema)) {
+            w.write(name + " (a int, b int) mapped\n");
+        }
+        Database.getCatalog().loadSchema(schema.getAbsolutePath());
+
+        HeapFile loaded = (HeapFile) Database.getCatalog().getDatabaseFile(Database.getCatalog().getTableId(name));
+        assertTrue(loaded instanceof MappedHeapFile);
+        SystemTestUtil.matchTuples(loaded, new TransactionId(), tuples);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(MappedHeapFileTest.class);
+    }
+}
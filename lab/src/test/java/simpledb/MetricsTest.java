@@ -0,0 +1,111 @@
+package simpledb;
+
+import junit.framework.JUnit4TestAdapter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import simpledb.model.Database;
+import simpledb.model.Permissions;
+import simpledb.model.TransactionId;
+import simpledb.model.dbfile.HeapFile;
+import simpledb.model.pageid.HeapPageId;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.util.BufferPool;
+import simpledb.util.metrics.Histogram;
+import simpledb.util.metrics.MetricsRegistry;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import static org.junit.Assert.*;
+
+public class MetricsTest extends SimpleDbTestBase {
+
+    private HeapFile hf;
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        hf = SystemTestUtil.createRandomHeapFile(1, 992 * 4, null, null);
+    }
+
+    @After
+    public void tearDown() {
+        Database.getCatalog().clear();
+    }
+
+    /**
+     * The pool counts hits, misses per table, evictions and dirty pages, and
+     * times its reads
+     */
+    @Test
+    public void bufferPoolMetrics() throws Exception {
+        BufferPool bufferPool = Database.resetBufferPool(2);
+        MetricsRegistry metrics = bufferPool.getMetrics();
+        metrics.setEnabled(true);
+        TransactionId tid = new TransactionId();
+        for (int pgNo : new int[] {0, 1, 0, 2, 3}) {
+            bufferPool.getPage(tid, new HeapPageId(hf.getId(), pgNo), Permissions.READ_ONLY);
+        }
+        bufferPool.getPage(tid, new HeapPageId(hf.getId(), 3), Permissions.READ_WRITE).markDirty(true, tid);
+
+        assertEquals(2, metrics.get(BufferPool.METRIC_HITS));
+        assertEquals(4, metrics.get(BufferPool.METRIC_MISSES));
+        assertEquals(4, metrics.get(BufferPool.tableMetric(BufferPool.METRIC_MISSES, hf.getId())));
+        assertEquals(2, metrics.get(BufferPool.METRIC_EVICTIONS));
+        assertEquals(2, metrics.get(BufferPool.METRIC_CACHED_PAGES));
+        assertEquals(1, metrics.get(BufferPool.METRIC_DIRTY_PAGES));
+        Histogram reads = metrics.getHistogram(BufferPool.METRIC_READ_NANOS);
+        assertEquals(4, reads.getCount());
+        assertTrue(reads.getPercentile(50) > 0);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        metrics.dump(new PrintStream(out, true));
+        assertTrue(out.toString().contains(BufferPool.METRIC_READ_NANOS + " "));
+        bufferPool.transactionComplete(tid, false);
+    }
+
+    /**
+     * A disabled registry counts nothing
+     */
+    @Test
+    public void disabled() throws Exception {
+        BufferPool bufferPool = Database.resetBufferPool(2);
+        MetricsRegistry metrics = bufferPool.getMetrics();
+        metrics.setEnabled(false);
+        TransactionId tid = new TransactionId();
+        bufferPool.getPage(tid, new HeapPageId(hf.getId(), 0), Permissions.READ_ONLY);
+        bufferPool.getPage(tid, new HeapPageId(hf.getId(), 0), Permissions.READ_ONLY);
+        assertEquals(0, metrics.get(BufferPool.METRIC_HITS));
+        assertEquals(0, metrics.get(BufferPool.METRIC_MISSES));
+        assertEquals(0, metrics.getHistogram(BufferPool.METRIC_READ_NANOS).getCount());
+        // gauges are computed on demand
+        assertEquals(1, metrics.get(BufferPool.METRIC_CACHED_PAGES));
+        bufferPool.transactionComplete(tid);
+    }
+
+    /**
+     * Unit test for Histogram percentiles
+     */
+    @Test
+    public void histogram() {
+        Histogram h = new Histogram();
+        for (int i = 1; i <= 100; i++) {
+            h.record(i);
+        }
+        assertEquals(100, h.getCount());
+        assertEquals(50.5, h.getMean(), 1e-9);
+        // 50 lies in [32, 64), 100 in [64, 128)
+        assertEquals(63, h.getPercentile(50));
+        assertEquals(127, h.getPercentile(100));
+        assertEquals(0, new Histogram().getPercentile(99));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(MetricsTest.class);
+    }
+}
@@ -0,0 +1,225 @@
+package simpledb;
+
+import junit.framework.JUnit4TestAdapter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import simpledb.exception.DbException;
+import simpledb.exception.TransactionAbortedException;
+import simpledb.model.Database;
+import simpledb.model.DbFileIterator;
+import simpledb.model.DbIterator;
+import simpledb.model.ParallelSeqScan;
+import simpledb.model.SeqScan;
+import simpledb.model.TransactionId;
+import simpledb.model.Tuple;
+import simpledb.model.dbfile.HeapFile;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.util.Utility;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import static org.junit.Assert.*;
+
+public class ParallelSeqScanTest extends SimpleDbTestBase {
+
+    private ForkJoinPool pool;
+    private TransactionId tid;
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        pool = new ForkJoinPool(4);
+        tid = new TransactionId();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Database.getBufferPool().transactionComplete(tid);
+        pool.shutdown();
+        Database.getCatalog().clear();
+    }
+
+    private static void count(Map<List<Integer>, Integer> counts, DbIterator it) throws Exception {
+        while (it.hasNext()) {
+            counts.merge(SystemTestUtil.tupleToList(it.next()), 1, Integer::sum);
+        }
+    }
+
+    private static Map<List<Integer>, Integer> countAll(DbIterator it) throws Exception {
+        Map<List<Integer>, Integer> counts = new HashMap<>();
+        it.open();
+        count(counts, it);
+        it.close();
+        return counts;
+    }
+
+    private static Map<List<Integer>, Integer> countAll(List<ArrayList<Integer>> tuples) {
+        Map<List<Integer>, Integer> counts = new HashMap<>();
+        for (List<Integer> t : tuples) {
+            counts.merge(t, 1, Integer::sum);
+        }
+        return counts;
+    }
+
+    /**
+     * The merged scan of a table of many morsels returns the tuples of the
+     * table, through a pool smaller than the table
+     */
+    @Test
+    public void merged() throws Exception {
+        Database.resetBufferPool(20);
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<>();
+        HeapFile f = SystemTestUtil.createRandomHeapFile(3, 60000, null, tuples);
+        assertTrue(f.numPages() > 2 * ParallelSeqScan.MORSEL_PAGES);
+
+        ParallelSeqScan scan = new ParallelSeqScan(tid, f.getId(), "t", 4, pool);
+        assertEquals(countAll(tuples), countAll(scan));
+        assertEquals(countAll(new SeqScan(tid, f.getId(), "t")), countAll(scan));
+        assertEquals(new SeqScan(tid, f.getId(), "t").getTupleDesc(), scan.getTupleDesc());
+    }
+
+    /**
+     * A scan closed before its end stops its workers, and can be opened again
+     */
+    @Test
+    public void closeEarly() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<>();
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 50000, null, tuples);
+
+        ParallelSeqScan scan = new ParallelSeqScan(tid, f.getId(), "t", 3, pool);
+        scan.open();
+        for (int i = 0; i < 10; i++) {
+            assertTrue(scan.hasNext());
+            scan.next();
+        }
+        scan.rewind();
+        Map<List<Integer>, Integer> counts = new HashMap<>();
+        count(counts, scan);
+        scan.close();
+        assertEquals(countAll(tuples), counts);
+    }
+
+    /**
+     * The partitions, scanned by threads of their own, return every tuple
+     * once between them
+     */
+    @Test
+    public void partitions() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<>();
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 80000, null, tuples);
+
+        List<DbIterator> partitions = new ParallelSeqScan(tid, f.getId(), "t", 1, pool).getPartitions(3);
+        assertEquals(3, partitions.size());
+        List<ForkJoinTask<Map<List<Integer>, Integer>>> tasks = new ArrayList<>();
+        for (DbIterator partition : partitions) {
+            tasks.add(pool.submit(() -> countAll(partition)));
+        }
+        Map<List<Integer>, Integer> counts = new HashMap<>();
+        for (ForkJoinTask<Map<List<Integer>, Integer>> task : tasks) {
+            Map<List<Integer>, Integer> part = task.get();
+            assertFalse(part.isEmpty());
+            part.forEach((t, n) -> counts.merge(t, n, Integer::sum));
+        }
+        assertEquals(countAll(tuples), counts);
+
+        // a partition is rewound as a whole
+        DbIterator first = partitions.get(0);
+        first.open();
+        Map<List<Integer>, Integer> once = new HashMap<>();
+        count(once, first);
+        first.rewind();
+        Map<List<Integer>, Integer> twice = new HashMap<>();
+        count(twice, first);
+        first.close();
+        assertEquals(once, twice);
+    }
+
+    /**
+     * A table of a single page has tuples in one partition only
+     */
+    @Test
+    public void smallTable() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<>();
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 10, null, tuples);
+        ParallelSeqScan scan = new ParallelSeqScan(tid, f.getId(), "t", 4, pool);
+        assertEquals(countAll(tuples), countAll(scan));
+
+        List<DbIterator> partitions = scan.getPartitions(2);
+        assertEquals(countAll(tuples), countAll(partitions.get(0)));
+        assertTrue(countAll(partitions.get(1)).isEmpty());
+    }
+
+    /**
+     * A worker failing fails the merged scan instead of leaving the
+     * consumer waiting for the other workers
+     */
+    @Test(timeout = 10000)
+    public void workerFails() throws Exception {
+        File file = SystemTestUtil.createRandomHeapFileUnopened(1, 992 * (2 * ParallelSeqScan.MORSEL_PAGES + 1),
+                1000, null, new ArrayList<>());
+        HeapFile f = new HeapFile(file, Utility.getTupleDesc(1)) {
+            @Override
+            public DbFileIterator iterator(TransactionId tid, int fromPage, int toPage) {
+                DbFileIterator it = super.iterator(tid, fromPage, toPage);
+                if (fromPage != ParallelSeqScan.MORSEL_PAGES) {
+                    return it;
+                }
+                return new DbFileIterator() {
+                    @Override
+                    public void open() throws DbException {
+                        throw new DbException("morsel unreadable");
+                    }
+
+                    @Override
+                    public boolean hasNext() throws DbException, TransactionAbortedException {
+                        return it.hasNext();
+                    }
+
+                    @Override
+                    public Tuple next() throws DbException, TransactionAbortedException {
+                        return it.next();
+                    }
+
+                    @Override
+                    public void rewind() throws DbException, TransactionAbortedException {
+                        it.rewind();
+                    }
+
+                    @Override
+                    public void close() {
+                        it.close();
+                    }
+                };
+            }
+        };
+        Database.getCatalog().addTable(f, SystemTestUtil.getUUID());
+        assertTrue(f.numPages() > 2 * ParallelSeqScan.MORSEL_PAGES);
+
+        ParallelSeqScan scan = new ParallelSeqScan(tid, f.getId(), "t", 2, pool);
+        scan.open();
+        try {
+            while (scan.hasNext()) {
+                scan.next();
+            }
+            fail("expected DbException");
+        } catch (DbException e) {
+            assertEquals("morsel unreadable", e.getMessage());
+        }
+        scan.close();
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ParallelSeqScanTest.class);
+    }
+}
@@ -0,0 +1,155 @@
+package simpledb;
+
+import junit.framework.JUnit4TestAdapter;
+import org.junit.Before;
+import org.junit.Test;
+import simpledb.model.Database;
+import simpledb.model.dbfile.HeapFile;
+import simpledb.model.page.Page;
+import simpledb.model.pageid.HeapPageId;
+import simpledb.model.pageid.PageId;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.util.BufferPool;
+import simpledb.util.ReadAhead;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ReadAheadTest extends SimpleDbTestBase {
+
+    private static final int PAGES = 10;
+    private HeapFile hf;
+
+    /**
+     * Set up initial resources for each unit test.
+     */
+    @Before
+    public void createFile() throws Exception {
+        hf = SystemTestUtil.createRandomHeapFile(1, 992 * PAGES, null, null);
+    }
+
+    private boolean waitCached(BufferPool bufferPool, int pgNo) throws InterruptedException {
+        HeapPageId pid = new HeapPageId(hf.getId(), pgNo);
+        for (int i = 0; i < 100 && !bufferPool.isCached(pid); i++) {
+            Thread.sleep(10);
+        }
+        return bufferPool.isCached(pid);
+    }
+
+    /**
+     * Sequential accesses prefetch the following pages
+     */
+    @Test
+    public void sequential() throws Exception {
+        BufferPool bufferPool = Database.getBufferPool();
+        ReadAhead readAhead = new ReadAhead(hf.getId(), PAGES, null);
+        for (int pgNo = 0; pgNo < ReadAhead.SEQUENTIAL_THRESHOLD + 1; pgNo++) {
+            readAhead.onAccess(pgNo);
+        }
+        assertTrue(waitCached(bufferPool, ReadAhead.SEQUENTIAL_THRESHOLD + 1));
+        assertFalse(bufferPool.isCached(new HeapPageId(hf.getId(), PAGES - 1)));
+    }
+
+    /**
+     * Random accesses and a zero window don't prefetch anything
+     */
+    @Test
+    public void notSequential() throws Exception {
+        BufferPool bufferPool = Database.getBufferPool();
+        ReadAhead readAhead = new ReadAhead(hf.getId(), PAGES, null);
+        readAhead.onAccess(5);
+        readAhead.onAccess(2);
+        readAhead.onAccess(7);
+        readAhead.onAccess(0);
+
+        bufferPool.setMaxReadAheadPages(0);
+        readAhead.reset();
+        for (int pgNo = 0; pgNo < PAGES; pgNo++) {
+            readAhead.onAccess(pgNo);
+        }
+        Thread.sleep(100);
+        for (int pgNo = 0; pgNo < PAGES; pgNo++) {
+            assertFalse(bufferPool.isCached(new HeapPageId(hf.getId(), pgNo)));
+        }
+    }
+
+    /**
+     * A prefetched window is read into the pool with a single batch read
+     */
+    @Test
+    public void batched() throws Exception {
+        BufferPool bufferPool = Database.getBufferPool();
+        bufferPool.getMetrics().setEnabled(true);
+        List<PageId> pids = new ArrayList<>();
+        for (int pgNo = 2; pgNo < 6; pgNo++) {
+            pids.add(new HeapPageId(hf.getId(), pgNo));
+        }
+        bufferPool.prefetchPages(pids, null);
+        for (int pgNo = 2; pgNo < 6; pgNo++) {
+            assertTrue(waitCached(bufferPool, pgNo));
+        }
+        assertEquals(1, bufferPool.getMetrics().get(BufferPool.METRIC_BATCH_READS));
+        assertFalse(bufferPool.isCached(new HeapPageId(hf.getId(), 6)));
+    }
+
+    /**
+     * A page still being read in the background counts as prefetched in
+     * time, not as evicted
+     */
+    @Test
+    public void loading() throws Exception {
+        BufferPool bufferPool = Database.getBufferPool();
+        CountDownLatch release = new CountDownLatch(1);
+        HeapFile slow = new HeapFile(hf.getFile(), hf.getTupleDesc()) {
+            @Override
+            public Page readPage(PageId pid, ByteBuffer frame) {
+                awaitQuietly(release);
+                return super.readPage(pid, frame);
+            }
+
+            @Override
+            public List<Page> readPages(List<PageId> pids, List<ByteBuffer> frames) {
+                awaitQuietly(release);
+                return super.readPages(pids, frames);
+            }
+        };
+        Database.getCatalog().addTable(slow, SystemTestUtil.getUUID());
+        HeapPageId pid = new HeapPageId(slow.getId(), 3);
+        bufferPool.prefetchPage(pid, null);
+        // the read-ahead thread claims the frame, then blocks in the read
+        for (int i = 0; i < 100 && !bufferPool.isCachedOrLoading(pid); i++) {
+            Thread.sleep(10);
+        }
+        assertTrue(bufferPool.isCachedOrLoading(pid));
+        assertFalse(bufferPool.isCached(pid));
+
+        release.countDown();
+        for (int i = 0; i < 100 && !bufferPool.isCached(pid); i++) {
+            Thread.sleep(10);
+        }
+        assertTrue(bufferPool.isCached(pid));
+        assertTrue(bufferPool.isCachedOrLoading(pid));
+        assertFalse(bufferPool.isCachedOrLoading(new HeapPageId(slow.getId(), 4)));
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ReadAheadTest.class);
+    }
+}
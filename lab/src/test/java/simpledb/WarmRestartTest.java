@@ -0,0 +1,130 @@
+package simpledb;
+
+import junit.framework.JUnit4TestAdapter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import simpledb.model.Database;
+import simpledb.model.Permissions;
+import simpledb.model.TransactionId;
+import simpledb.model.dbfile.HeapFile;
+import simpledb.model.pageid.HeapPageId;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.util.BufferPool;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+public class WarmRestartTest extends SimpleDbTestBase {
+
+    private static final int PAGES = 8;
+
+    private HeapFile hf;
+    private File dumpFile;
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        hf = SystemTestUtil.createRandomHeapFile(1, 992 * PAGES, null, null);
+        dumpFile = File.createTempFile("pages", ".dump");
+        dumpFile.deleteOnExit();
+    }
+
+    @After
+    public void tearDown() {
+        Database.getBufferPool().stopPageDumps();
+        Database.getCatalog().clear();
+    }
+
+    private void read(BufferPool bufferPool, int... pgNos) throws Exception {
+        TransactionId tid = new TransactionId();
+        for (int pgNo : pgNos) {
+            bufferPool.getPage(tid, new HeapPageId(hf.getId(), pgNo), Permissions.READ_ONLY);
+        }
+        bufferPool.transactionComplete(tid);
+    }
+
+    /**
+     * A new pool reads back the pages the old one dumped
+     */
+    @Test
+    public void dumpAndWarmUp() throws Exception {
+        read(Database.getBufferPool(), 6, 1, 3);
+        Database.getBufferPool().dumpResidentPages(dumpFile);
+
+        BufferPool bufferPool = Database.resetBufferPool(PAGES);
+        assertEquals(3, (int) bufferPool.warmUp(dumpFile).get());
+        for (int pgNo = 0; pgNo < PAGES; pgNo++) {
+            boolean dumped = pgNo == 1 || pgNo == 3 || pgNo == 6;
+            assertEquals(dumped, bufferPool.isCached(new HeapPageId(hf.getId(), pgNo)));
+        }
+    }
+
+    /**
+     * A smaller pool reads back the most recently used pages only
+     */
+    @Test
+    public void smallerPoolKeepsHottestPages() throws Exception {
+        read(Database.getBufferPool(), 0, 1, 2, 3, 4, 5);
+        read(Database.getBufferPool(), 2, 0);
+        Database.getBufferPool().dumpResidentPages(dumpFile);
+
+        BufferPool bufferPool = Database.resetBufferPool(3);
+        assertEquals(3, (int) bufferPool.warmUp(dumpFile).get());
+        assertTrue(bufferPool.isCached(new HeapPageId(hf.getId(), 0)));
+        assertTrue(bufferPool.isCached(new HeapPageId(hf.getId(), 2)));
+        assertTrue(bufferPool.isCached(new HeapPageId(hf.getId(), 5)));
+    }
+
+    /**
+     * Periodic dumps replace the dump file, and a missing dump warms up nothing
+     */
+    @Test
+    public void periodicDumps() throws Exception {
+        assertTrue(dumpFile.delete());
+        read(Database.getBufferPool(), 4);
+        assertEquals(0, (int) Database.enableWarmRestart(dumpFile, 10).get());
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!dumpFile.exists() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Database.getBufferPool().stopPageDumps();
+
+        BufferPool bufferPool = Database.resetBufferPool(PAGES);
+        bufferPool.warmUp(dumpFile).get();
+        assertTrue(bufferPool.isCached(new HeapPageId(hf.getId(), 4)));
+    }
+
+    /**
+     * Replacing the pool stops its dumps and their thread
+     */
+    @Test
+    public void resetStopsDumps() throws Exception {
+        Database.getBufferPool().startPageDumps(dumpFile, 10);
+        assertTrue(dumperRunning());
+        Database.resetBufferPool(PAGES);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (dumperRunning() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertFalse(dumperRunning());
+    }
+
+    private static boolean dumperRunning() {
+        for (Thread t : Thread.getAllStackTraces().keySet()) {
+            if (t.getName().equals("BufferPool-page-dumper") && t.isAlive()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(WarmRestartTest.class);
+    }
+}
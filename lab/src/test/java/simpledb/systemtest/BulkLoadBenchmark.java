@@ -0,0 +1,67 @@
+package simpledb.systemtest;
+
+import simpledb.model.dbfile.BulkLoader;
+import simpledb.model.dbfile.HeapFileEncoder;
+import simpledb.util.BufferPool;
+import simpledb.util.Utility;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.PrintWriter;
+
+/**
+ * Benchmark of loading a table of int rows with HeapFileEncoder from a text
+ * file, sequentially and in parallel, and with the BulkLoader using one and
+ * several threads to build the pages.
+ * <p>
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test
+ *     -Dexec.mainClass=simpledb.systemtest.BulkLoadBenchmark [-Dexec.args="rows"]
+ */
+public class BulkLoadBenchmark {
+
+    private static final int DEFAULT_ROWS = 5000000;
+    private static final int COLUMNS = 4;
+
+    private static void report(String name, File f, long start) {
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("%-20s %10d %12.1f%n", name, f.length(), f.length() * 1e9 / elapsed / (1 << 20));
+    }
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_ROWS;
+        int[][] data = new int[rows][COLUMNS];
+        File text = File.createTempFile("table", ".txt");
+        text.deleteOnExit();
+        try (PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(text)))) {
+            for (int i = 0; i < rows; i++) {
+                for (int j = 0; j < COLUMNS; j++) {
+                    data[i][j] = i + j;
+                    out.print(j == 0 ? "" : ",");
+                    out.print(i + j);
+                }
+                out.println();
+            }
+        }
+        File f = File.createTempFile("table", ".dat");
+        f.deleteOnExit();
+
+        System.out.printf("%-20s %10s %12s%n", "loader", "bytes", "MB/s");
+        long start = System.nanoTime();
+        HeapFileEncoder.convert(text, f, BufferPool.getPageSize(), COLUMNS);
+        report("HeapFileEncoder", f, start);
+        int cpus = Runtime.getRuntime().availableProcessors();
+        start = System.nanoTime();
+        HeapFileEncoder.convert(text, f, BufferPool.getPageSize(), COLUMNS, Utility.getTypes(COLUMNS), ',', cpus);
+        report("HeapFileEncoder x" + cpus, f, start);
+        for (int threads : new int[] {1, cpus}) {
+            start = System.nanoTime();
+            try (BulkLoader loader = new BulkLoader(f, Utility.getTupleDesc(COLUMNS), BufferPool.getPageSize(), threads)) {
+                for (int[] row : data) {
+                    loader.addRow(row);
+                }
+            }
+            report("BulkLoader x" + threads, f, start);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package simpledb.systemtest;
+
+import simpledb.model.Database;
+import simpledb.model.dbfile.HeapFile;
+import simpledb.model.page.HeapPage;
+import simpledb.model.pageid.HeapPageId;
+import simpledb.util.BufferPool;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+/**
+ * Microbenchmark of HeapFile.readPage: compares pages/sec of the old
+ * implementation, which opened a new FileInputStream and skipped to the page
+ * on every read, with the current positional reads on the file's channel.
+ * Pages are read in random order, bypassing the BufferPool. The I/O only
+ * numbers leave out HeapPage decoding, which dominates end to end readPage.
+ * <p>
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test
+ *     -Dexec.mainClass=simpledb.systemtest.ReadPageBenchmark [-Dexec.args="pages reads"]
+ */
+public class ReadPageBenchmark {
+
+    private static final int DEFAULT_PAGES = 256;
+    private static final int DEFAULT_READS = 20000;
+
+    private interface PageReader {
+        void read(HeapPageId pid) throws IOException;
+    }
+
+    /** The readPage implementation HeapFile used before it kept a FileChannel. */
+    private static byte[] readWithStream(HeapFile hf, HeapPageId pid) throws IOException {
+        byte[] rawPgData = HeapPage.createEmptyPageData();
+        try (FileInputStream in = new FileInputStream(hf.getFile())) {
+            in.skip((long) pid.pageNumber() * BufferPool.getPageSize());
+            in.read(rawPgData);
+        }
+        return rawPgData;
+    }
+
+    /** The I/O part of the current readPage. */
+    private static byte[] readWithChannel(FileChannel fc, HeapPageId pid) throws IOException {
+        byte[] rawPgData = HeapPage.createEmptyPageData();
+        ByteBuffer buf = ByteBuffer.wrap(rawPgData);
+        long offset = (long) pid.pageNumber() * BufferPool.getPageSize();
+        while (buf.hasRemaining()) {
+            if (fc.read(buf, offset + buf.position()) < 0) {
+                break;
+            }
+        }
+        return rawPgData;
+    }
+
+    private static double pagesPerSecond(HeapFile hf, int[] pgNos, PageReader reader) throws IOException {
+        long start = System.nanoTime();
+        for (int pgNo : pgNos) {
+            reader.read(new HeapPageId(hf.getId(), pgNo));
+        }
+        long elapsed = System.nanoTime() - start;
+        return pgNos.length * 1e9 / elapsed;
+    }
+
+    private static void report(String name, HeapFile hf, int[] pgNos, PageReader reader) throws IOException {
+        // warm up the JIT and the OS page cache
+        pagesPerSecond(hf, pgNos, reader);
+        System.out.printf("%-40s %10.0f pages/sec%n", name, pagesPerSecond(hf, pgNos, reader));
+    }
+
+    public static void main(String[] args) throws Exception {
+        int pages = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PAGES;
+        int reads = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_READS;
+
+        HeapFile hf = SystemTestUtil.createRandomHeapFile(1, 992 * pages, null, null);
+        Random r = new Random(0);
+        int[] pgNos = new int[reads];
+        for (int i = 0; i < reads; i++) {
+            pgNos[i] = r.nextInt(pages);
+        }
+
+        report("I/O only, FileInputStream per read", hf, pgNos, pid -> readWithStream(hf, pid));
+        try (FileChannel fc = FileChannel.open(hf.getFile().toPath(), StandardOpenOption.READ)) {
+            report("I/O only, positional FileChannel", hf, pgNos, pid -> readWithChannel(fc, pid));
+        }
+        report("readPage, FileInputStream per read", hf, pgNos,
+                pid -> new HeapPage(pid, readWithStream(hf, pid)));
+        report("readPage, positional FileChannel", hf, pgNos, hf::readPage);
+        Database.getCatalog().clear();
+    }
+}
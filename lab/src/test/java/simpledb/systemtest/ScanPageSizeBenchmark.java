@@ -0,0 +1,70 @@
+package simpledb.systemtest;
+
+import simpledb.model.Database;
+import simpledb.model.DbFileIterator;
+import simpledb.model.TransactionId;
+import simpledb.model.dbfile.HeapFile;
+import simpledb.model.dbfile.HeapFileEncoder;
+import simpledb.util.Utility;
+
+import java.io.File;
+import java.util.ArrayList;
+
+/**
+ * Benchmark of a full HeapFile scan through the BufferPool for several page
+ * sizes. The same tuples are encoded once per page size, then each file is
+ * scanned with a cold and a warm BufferPool large enough to hold all of it.
+ * <p>
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test
+ *     -Dexec.mainClass=simpledb.systemtest.ScanPageSizeBenchmark [-Dexec.args="rows"]
+ */
+public class ScanPageSizeBenchmark {
+
+    private static final int DEFAULT_ROWS = 2000000;
+    private static final int COLUMNS = 2;
+    private static final int[] PAGE_SIZES = {4096, 16384, 65536};
+
+    private static double tuplesPerSecond(HeapFile hf) throws Exception {
+        TransactionId tid = new TransactionId();
+        long start = System.nanoTime();
+        long count = 0;
+        DbFileIterator it = hf.iterator(tid);
+        it.open();
+        while (it.hasNext()) {
+            it.next();
+            count++;
+        }
+        it.close();
+        long elapsed = System.nanoTime() - start;
+        Database.getBufferPool().transactionComplete(tid);
+        return count * 1e9 / elapsed;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_ROWS;
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            ArrayList<Integer> tuple = new ArrayList<>(COLUMNS);
+            for (int j = 0; j < COLUMNS; j++) {
+                tuple.add(i + j);
+            }
+            tuples.add(tuple);
+        }
+
+        System.out.printf("%-10s %8s %15s %15s%n", "page size", "pages", "cold tuples/s", "warm tuples/s");
+        for (int pageSize : PAGE_SIZES) {
+            File f = File.createTempFile("table", ".dat");
+            f.deleteOnExit();
+            HeapFileEncoder.convert(tuples, f, pageSize, COLUMNS);
+            HeapFile hf = new HeapFile(f, Utility.getTupleDesc(COLUMNS));
+            Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+            // the pool counts pages, not bytes, so every file fits
+            Database.resetBufferPool(hf.numPages());
+
+            double cold = tuplesPerSecond(hf);
+            double warm = tuplesPerSecond(hf);
+            System.out.printf("%-10d %8d %15.0f %15.0f%n", pageSize, hf.numPages(), cold, warm);
+            Database.getCatalog().clear();
+        }
+    }
+}
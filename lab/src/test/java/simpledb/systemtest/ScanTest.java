@@ -3,6 +3,7 @@ package simpledb.systemtest;
 import org.junit.Test;
 import simpledb.model.*;
 import simpledb.model.page.Page;
+import simpledb.model.pageid.HeapPageId;
 import simpledb.model.pageid.PageId;
 import simpledb.util.BufferPool;
 import simpledb.exception.DbException;
@@ -12,9 +13,14 @@ import simpledb.util.Utility;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Random;
+import java.util.Set;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
@@ -91,6 +97,12 @@ public class ScanTest extends SimpleDbTestBase {
                 return super.readPage(pid);
             }
 
+            @Override
+            public List<Page> readPages(List<PageId> pids, List<ByteBuffer> frames) {
+                readCount += pids.size();
+                return super.readPages(pids, frames);
+            }
+
             public int readCount = 0;
         }
 
@@ -112,6 +124,116 @@ public class ScanTest extends SimpleDbTestBase {
         assertEquals(0, table.readCount);
     }
 
+    /** Verifies that scanning a table larger than the pool keeps other cached pages.
+     * @throws TransactionAbortedException
+     * @throws DbException */
+    @Test
+    public void testScanResistance() throws IOException, DbException, TransactionAbortedException {
+        /** Counts the number of readPage operations. */
+        class InstrumentedHeapFile extends HeapFile {
+            public InstrumentedHeapFile(File f, TupleDesc td) {
+                super(f, td);
+            }
+
+            @Override
+            public Page readPage(PageId pid) throws NoSuchElementException {
+                readCount += 1;
+                return super.readPage(pid);
+            }
+
+            @Override
+            public List<Page> readPages(List<PageId> pids, List<ByteBuffer> frames) {
+                readCount += pids.size();
+                return super.readPages(pids, frames);
+            }
+
+            public int readCount = 0;
+        }
+
+        // Create a small hot table and a table larger than the pool
+        final int HOT_PAGES = 20;
+        ArrayList<ArrayList<Integer>> hotTuples = new ArrayList<>();
+        File f = SystemTestUtil.createRandomHeapFileUnopened(1, 992*HOT_PAGES, 1000, null, hotTuples);
+        InstrumentedHeapFile hot = new InstrumentedHeapFile(f, Utility.getTupleDesc(1));
+        Database.getCatalog().addTable(hot, SystemTestUtil.getUUID());
+
+        ArrayList<ArrayList<Integer>> bigTuples = new ArrayList<>();
+        HeapFile big = SystemTestUtil.createRandomHeapFile(
+                1, 992*BufferPool.DEFAULT_PAGES*2, 1000, null, bigTuples);
+
+        SystemTestUtil.matchTuples(hot, hotTuples);
+        assertEquals(HOT_PAGES, hot.readCount);
+        hot.readCount = 0;
+
+        // The large scan runs in its own ring of frames
+        SystemTestUtil.matchTuples(big, bigTuples);
+        SystemTestUtil.matchTuples(hot, hotTuples);
+        assertEquals(0, hot.readCount);
+    }
+
+    /** Verifies that a scan reading ahead stays in its ring when the hot pages
+     * fill every frame of the pool but the ring's.
+     * @throws TransactionAbortedException
+     * @throws DbException */
+    @Test
+    public void testScanResistanceWithReadAhead() throws IOException, DbException, TransactionAbortedException {
+        /** Records the pages read, by iterators and read-ahead threads alike. */
+        class InstrumentedHeapFile extends HeapFile {
+            public InstrumentedHeapFile(File f, TupleDesc td) {
+                super(f, td);
+            }
+
+            @Override
+            public List<Page> readPages(List<PageId> pids, List<ByteBuffer> frames) {
+                pagesRead.addAll(pids);
+                return super.readPages(pids, frames);
+            }
+
+            @Override
+            public Page readPage(PageId pid, ByteBuffer frame) {
+                pagesRead.add(pid);
+                return super.readPage(pid, frame);
+            }
+
+            public final Set<PageId> pagesRead = Collections.synchronizedSet(new HashSet<>());
+        }
+
+        BufferPool bufferPool = Database.getBufferPool();
+        int ringSize = bufferPool.getBulkReadStrategy(Integer.MAX_VALUE).getRingSize();
+        final int HOT_PAGES = BufferPool.DEFAULT_PAGES - ringSize;
+        File f = SystemTestUtil.createRandomHeapFileUnopened(1, 992*HOT_PAGES, 1000, null, null);
+        InstrumentedHeapFile hot = new InstrumentedHeapFile(f, Utility.getTupleDesc(1));
+        Database.getCatalog().addTable(hot, SystemTestUtil.getUUID());
+        HeapFile big = SystemTestUtil.createRandomHeapFile(1, 992*200, 1000, null, null);
+        assertTrue(bufferPool.getMaxReadAheadPages() > 0);
+
+        scanAll(hot);
+        assertEquals(HOT_PAGES, hot.pagesRead.size());
+        hot.pagesRead.clear();
+
+        scanAll(big);
+        int bigCached = 0;
+        for (int pgNo = 0; pgNo < big.numPages(); pgNo++) {
+            if (bufferPool.isCached(new HeapPageId(big.getId(), pgNo))) {
+                bigCached++;
+            }
+        }
+        assertTrue("the scan holds " + bigCached + " frames", bigCached <= ringSize);
+        scanAll(hot);
+        assertEquals(0, hot.pagesRead.size());
+    }
+
+    private static void scanAll(HeapFile f) throws IOException, DbException, TransactionAbortedException {
+        TransactionId tid = new TransactionId();
+        SeqScan scan = new SeqScan(tid, f.getId(), "");
+        scan.open();
+        while (scan.hasNext()) {
+            scan.next();
+        }
+        scan.close();
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
     /** Make test compatible with older version of ant. */
     public static junit.framework.Test suite() {
         return new junit.framework.JUnit4TestAdapter(ScanTest.class);